@@ -0,0 +1,67 @@
+package dev.hsborges.proxy.bench;
+
+import dev.hsborges.proxy.cache.ScoreKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara o {@link ScoreKey} com o builder antigo do controller (stream ordenado + reduce com
+ * concatenação). Rodar com {@code -prof gc} para ver a alocação por operação.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheKeyBenchmark {
+
+    @Param({"1", "3"})
+    int paramCount;
+
+    private Map<String, String> params;
+
+    @Setup
+    public void setup() {
+        params = new LinkedHashMap<>();
+        params.put("cpf", "123.456.789-09");
+        if (paramCount > 1) {
+            params.put("nome", "José da Silva");
+            params.put("clientId", "42");
+        }
+    }
+
+    @Benchmark
+    public String legacyStreamBuilder() {
+        return params.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(e -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "=" + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+                .reduce((a, b) -> a + "&" + b)
+                .orElse("");
+    }
+
+    @Benchmark
+    public ScoreKey scoreKey() {
+        return ScoreKey.of(params, "42");
+    }
+
+    @Benchmark
+    public int scoreKeyHash() {
+        return ScoreKey.of(params, "42").hashCode();
+    }
+}
@@ -0,0 +1,137 @@
+package dev.hsborges.proxy.bench;
+
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreCache;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.config.Beans;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.job.ScoreJob;
+import dev.hsborges.proxy.persistence.JournalSink;
+import dev.hsborges.proxy.persistence.MappedScoreJournal;
+import dev.hsborges.proxy.persistence.ScoreJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo do journal: {@code Append} mede a gravação de uma entrada de cache no caminho do scheduler e
+ * {@code Restore} mede o startup com alguns milhões de entradas: replay do journal já aberto e carga no
+ * {@link ScoreCache} de produção, como em {@code JournalMaintenance}.
+ */
+public class JournalBenchmark {
+    private static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    static CachedScore entry(int i) {
+        String cpf = String.format("%011d", i);
+        byte[] body = ("{\"cpf\":\"" + cpf + "\",\"score\":742,\"message\":\"O score de " + cpf + " é 742\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        return new CachedScore(body, 200, System.currentTimeMillis(), false, Map.of("cpf", cpf), "1");
+    }
+
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    public static class Append {
+        private Path dir;
+        private MappedScoreJournal journal;
+        private ScoreKey key;
+        private CachedScore entry;
+
+        @Setup
+        public void setup() throws IOException {
+            dir = Files.createTempDirectory("journal-append");
+            journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+            entry = entry(1);
+            key = ScoreKey.of(entry.queryParams(), "1");
+        }
+
+        // snapshot vazio: apaga os segmentos cheios para o disco não crescer entre iterações
+        @TearDown(Level.Iteration)
+        public void truncate() throws IOException {
+            journal.compact(sink -> { });
+        }
+
+        @Benchmark
+        public void cacheEntry() {
+            journal.cacheEntry(key, entry);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    @Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+    public static class Restore {
+        @Param({"1000000", "3000000"})
+        int entries;
+
+        private MappedScoreJournal journal;
+        private ProxyConfig config;
+        private ScoreCache cache;
+
+        // abre uma vez: open() mapeia um segmento novo de 64 MB, custo que não é do replay
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            Path dir = Files.createTempDirectory("journal-restore");
+            MappedScoreJournal writer = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+            for (int i = 0; i < entries; i++) {
+                CachedScore e = entry(i);
+                writer.cacheEntry(ScoreKey.of(e.queryParams(), "1"), e);
+            }
+            writer.close();
+            journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+            config = new ProxyConfig();
+            config.setCacheMaxSize(entries);
+        }
+
+        @Setup(Level.Invocation)
+        public void emptyCache() {
+            cache = new ScoreCache(new Beans().responseCache(config), ScoreJournal.NOOP, config, new SimpleMeterRegistry());
+        }
+
+        @Benchmark
+        public ScoreCache restore() throws IOException {
+            Map<ScoreKey, CachedScore> restored = new HashMap<>(entries * 2);
+            journal.replay(new JournalSink() {
+                @Override
+                public void cacheEntry(ScoreKey key, CachedScore entry) {
+                    restored.merge(key, entry, (a, b) -> b.writtenAtMillis() >= a.writtenAtMillis() ? b : a);
+                }
+
+                @Override
+                public void jobAccepted(ScoreJob job) {
+                }
+
+                @Override
+                public void jobDone(ScoreJob job, ScoreJob.Result result) {
+                }
+            });
+            cache.restore(restored);
+            return cache;
+        }
+    }
+}
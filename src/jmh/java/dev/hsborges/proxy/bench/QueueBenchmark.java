@@ -0,0 +1,157 @@
+package dev.hsborges.proxy.bench;
+
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.queue.RequestQueue;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RequestQueue} disputada: vários produtores (threads do controller) fazendo {@code offer} sem
+ * espera contra um único consumidor fazendo {@code poll}, como o scheduler. Cada grupo fixa o número de
+ * produtores (1, 4 ou 16). Cada {@code offer} cria uma requisição nova, porque a mesma instância não pode
+ * estar duas vezes no conjunto; desconte o custo medido em {@link RequestBenchmark}.
+ * {@code partitions > 1} espalha as requisições entre credenciais fixadas além da partição compartilhada.
+ * <p>
+ * Com mais produtores que consumidor a fila enche e boa parte dos {@code offer} vira recusa imediata (o
+ * caminho de backpressure), bem mais barata que uma inserção. Por isso o throughput de {@code offer*} não
+ * se lê sozinho: os contadores {@code accepted}/{@code rejected} e {@code served}/{@code empty} mostram a
+ * taxa de aceite e de polls vazios. A fila começa vazia a cada iteração.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+    private static final PrioritizedRequest.Priority[] PRIORITIES = PrioritizedRequest.Priority.values();
+    private static final Map<String, String> PARAMS = Map.of("cpf", "123.456.789-09");
+
+    @Param({"1", "4"})
+    int partitions;
+
+    private RequestQueue queue;
+    private ScoreKey key;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        queue = new RequestQueue(1024, new int[]{8, 4, 1}, 2500);
+        key = ScoreKey.of(PARAMS, "");
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Offers {
+        public long accepted;
+        public long rejected;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            accepted = 0;
+            rejected = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Polls {
+        public long served;
+        public long empty;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            served = 0;
+            empty = 0;
+        }
+    }
+
+    private boolean offer(Offers offers) throws InterruptedException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int p = random.nextInt(partitions);
+        String clientId = p == 0 ? "" : "c" + p;
+        PrioritizedRequest req = new PrioritizedRequest(key, "/score", PARAMS, Map.of(), clientId,
+                PRIORITIES[random.nextInt(PRIORITIES.length)], Instant.now().plusSeconds(10));
+        if (queue.offer(req, 0)) {
+            offers.accepted++;
+            return true;
+        }
+        offers.rejected++;
+        return false;
+    }
+
+    // o consumidor alterna entre as credenciais como o scheduler faz com as faixas
+    private int cursor;
+
+    private PrioritizedRequest poll(Polls polls) {
+        int p = cursor++ % partitions;
+        PrioritizedRequest req = queue.poll(p == 0 ? "c0" : "c" + p, true);
+        if (req != null) {
+            polls.served++;
+        } else {
+            polls.empty++;
+        }
+        return req;
+    }
+
+    @Benchmark
+    @Group("producers1")
+    @GroupThreads(1)
+    public boolean offer1(Offers offers) throws InterruptedException {
+        return offer(offers);
+    }
+
+    @Benchmark
+    @Group("producers1")
+    @GroupThreads(1)
+    public PrioritizedRequest poll1(Polls polls) {
+        return poll(polls);
+    }
+
+    @Benchmark
+    @Group("producers4")
+    @GroupThreads(4)
+    public boolean offer4(Offers offers) throws InterruptedException {
+        return offer(offers);
+    }
+
+    @Benchmark
+    @Group("producers4")
+    @GroupThreads(1)
+    public PrioritizedRequest poll4(Polls polls) {
+        return poll(polls);
+    }
+
+    @Benchmark
+    @Group("producers16")
+    @GroupThreads(16)
+    public boolean offer16(Offers offers) throws InterruptedException {
+        return offer(offers);
+    }
+
+    @Benchmark
+    @Group("producers16")
+    @GroupThreads(1)
+    public PrioritizedRequest poll16(Polls polls) {
+        return poll(polls);
+    }
+}
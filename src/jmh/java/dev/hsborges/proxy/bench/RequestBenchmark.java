@@ -0,0 +1,98 @@
+package dev.hsborges.proxy.bench;
+
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.upstream.ForwardedHeaders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Custo de criar uma requisição no caminho do {@code GET /proxy/score}: a seleção dos cabeçalhos
+ * repassados ({@link ForwardedHeaders}, como no controller), o {@link ScoreKey} e o {@link PrioritizedRequest} em si, além das peças isoladas
+ * ({@code UUID.randomUUID()} sobre {@code SecureRandom} e {@code Instant.now()}). Roda com 4 threads
+ * para expor disputa no {@code SecureRandom} compartilhado. Rodar com {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class RequestBenchmark {
+
+    private Map<String, String> params;
+    private Map<String, String> headers;
+    private ForwardedHeaders forwardedHeaders;
+    private ScoreKey key;
+
+    @Setup
+    public void setup() {
+        params = Map.of("cpf", "123.456.789-09");
+        // cabeçalhos típicos que chegam ao controller de um cliente HTTP comum
+        headers = new LinkedHashMap<>();
+        headers.put("host", "localhost:8080");
+        headers.put("user-agent", "curl/8.5.0");
+        headers.put("accept", "*/*");
+        headers.put("x-priority", "HIGH");
+        headers.put("x-client-id", "42");
+        headers.put("x-deadline-ms", "5000");
+        key = ScoreKey.of(params, "42");
+        forwardedHeaders = new ForwardedHeaders(new ProxyConfig());
+    }
+
+    @Benchmark
+    public PrioritizedRequest controllerPath() {
+        return new PrioritizedRequest(ScoreKey.of(params, "42"), "/score", params, forwardedHeaders.select(headers), "42",
+                PrioritizedRequest.Priority.HIGH, Instant.now().plusMillis(5000));
+    }
+
+    @Benchmark
+    public PrioritizedRequest create() {
+        return new PrioritizedRequest(key, "/score", params, headers, "42",
+                PrioritizedRequest.Priority.HIGH, null);
+    }
+
+    @Benchmark
+    public Map<String, String> headerSelect() {
+        return forwardedHeaders.select(headers);
+    }
+
+    // cópia integral que o controller fazia antes do ForwardedHeaders, como referência
+    @Benchmark
+    public Map<String, String> headerCopy() {
+        return new HashMap<>(headers);
+    }
+
+    @Benchmark
+    public UUID randomUuid() {
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    public Instant instantNow() {
+        return Instant.now();
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
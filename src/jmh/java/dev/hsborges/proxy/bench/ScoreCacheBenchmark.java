@@ -0,0 +1,89 @@
+package dev.hsborges.proxy.bench;
+
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreCache;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.config.Beans;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.persistence.ScoreJournal;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.upstream.UpstreamResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ScoreCache} montado como em produção (Caffeine com {@code Expiry} variável, journal desligado,
+ * contadores reais): {@code get} com hit e com miss e {@code put} de uma resposta do upstream, com 4
+ * threads. {@code keys} maior que {@code proxy.cache-max-size} força despejos no {@code put}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ScoreCacheBenchmark {
+
+    @Param({"1000", "100000"})
+    int keys;
+
+    private ScoreCache cache;
+    private ScoreKey[] present;
+    private ScoreKey[] absent;
+    private UpstreamResponse response;
+    private PrioritizedRequest request;
+
+    @Setup
+    public void setup() {
+        ProxyConfig config = new ProxyConfig();
+        cache = new ScoreCache(new Beans().responseCache(config), ScoreJournal.NOOP, config, new SimpleMeterRegistry());
+        byte[] body = "{\"cpf\":\"123.456.789-09\",\"score\":742,\"message\":\"O score de 123.456.789-09 é 742\"}"
+                .getBytes(StandardCharsets.UTF_8);
+        response = new UpstreamResponse(200, body, false);
+        request = new PrioritizedRequest(ScoreKey.of(Map.of("cpf", "0"), ""), "/score", Map.of("cpf", "0"),
+                Map.of(), "", PrioritizedRequest.Priority.MEDIUM, null);
+
+        int live = Math.min(keys, config.getCacheMaxSize());
+        present = new ScoreKey[live];
+        for (int i = 0; i < live; i++) {
+            present[i] = ScoreKey.of(Map.of("cpf", String.format("%011d", i)), "");
+            cache.put(present[i], response, request, false);
+        }
+        absent = new ScoreKey[keys];
+        for (int i = 0; i < keys; i++) {
+            absent[i] = ScoreKey.of(Map.of("cpf", String.format("9%010d", i)), "");
+        }
+    }
+
+    @Benchmark
+    public CachedScore getHit() {
+        return cache.get(present[ThreadLocalRandom.current().nextInt(present.length)]);
+    }
+
+    @Benchmark
+    public CachedScore getMiss() {
+        return cache.get(absent[ThreadLocalRandom.current().nextInt(absent.length)]);
+    }
+
+    @Benchmark
+    public void put() {
+        cache.put(absent[ThreadLocalRandom.current().nextInt(absent.length)], response, request, false);
+    }
+}
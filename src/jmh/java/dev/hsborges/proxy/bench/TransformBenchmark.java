@@ -0,0 +1,66 @@
+package dev.hsborges.proxy.bench;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.hsborges.proxy.upstream.ScoreBodyTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara a transformação antiga do corpo (bytes → {@code String} → árvore {@link JsonNode} → {@code String}
+ * → bytes) com o {@link ScoreBodyTransformer} em streaming. Rodar com {@code -prof gc}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+    @Param({"small", "padded"})
+    String shape;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScoreBodyTransformer transformer = new ScoreBodyTransformer(new JsonFactory());
+    private byte[] upstreamBody;
+
+    @Setup
+    public void setup() {
+        String json = "{\"cpf\":\"123.456.789-09\",\"score\":742,\"faixa\":\"B\",\"atualizadoEm\":\"2024-05-01T10:00:00Z\"}";
+        if ("padded".equals(shape)) {
+            json = "\n  )]}',\n" + json.replace("}", ",\"historico\":[610,655,700,742],\"detalhes\":{\"consultas\":3,\"restricoes\":0}}") + "\n";
+        }
+        upstreamBody = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] legacyTree() throws Exception {
+        String raw = new String(upstreamBody, StandardCharsets.UTF_8);
+        int start = raw.indexOf('{');
+        int end = raw.lastIndexOf('}');
+        JsonNode node = mapper.readTree(raw.substring(start, end + 1));
+        ((ObjectNode) node).put("message", "O score de " + node.get("cpf").asText() + " é " + node.get("score").asInt());
+        return mapper.writeValueAsString(node).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] streaming() {
+        return transformer.addMessage(DefaultDataBufferFactory.sharedInstance.wrap(upstreamBody));
+    }
+}
@@ -0,0 +1,23 @@
+package dev.hsborges.proxy.budget;
+
+import java.util.Map;
+
+/**
+ * Estado global do orçamento, visto por todas as réplicas: um token bucket por credencial e a demanda
+ * anunciada por cada nó. Uma implementação sobre um key-value store precisa fazer cada operação de forma
+ * atômica (por exemplo um script no servidor); {@link InMemoryBudgetStore} é o substituto embarcado.
+ */
+public interface BudgetStore {
+
+    /** Anuncia a profundidade de fila do nó para a credencial; some se não for renovada em {@code ttlNanos}. */
+    void heartbeat(String clientId, String nodeId, int demand, long ttlNanos);
+
+    /** Demanda dos nós vivos. Entradas vencidas (nó caiu ou parou de renovar) são descartadas aqui. */
+    Map<String, Integer> demand(String clientId);
+
+    /**
+     * Retira até {@code max} tokens do bucket global da credencial, reabastecido a {@code ratePerSecond}
+     * com capacidade {@code burst}. Devolve quantos foram concedidos.
+     */
+    long take(String clientId, long max, double ratePerSecond, int burst);
+}
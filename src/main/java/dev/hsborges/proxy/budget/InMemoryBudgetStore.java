@@ -0,0 +1,72 @@
+package dev.hsborges.proxy.budget;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link BudgetStore} em memória: substituto embarcado do key-value store, usado com várias instâncias do
+ * coordenador no mesmo processo (testes) ou com uma réplica só. Cada credencial é protegida pelo próprio
+ * monitor, o que reproduz a atomicidade esperada do store real.
+ */
+public class InMemoryBudgetStore implements BudgetStore {
+
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** @param clock relógio em nanos (o do store, não o dos nós) */
+    public InMemoryBudgetStore(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public void heartbeat(String clientId, String nodeId, int demand, long ttlNanos) {
+        Entry entry = entry(clientId);
+        synchronized (entry) {
+            entry.nodes.put(nodeId, new NodeDemand(demand, clock.getAsLong() + ttlNanos));
+        }
+    }
+
+    @Override
+    public Map<String, Integer> demand(String clientId) {
+        Entry entry = entry(clientId);
+        long now = clock.getAsLong();
+        Map<String, Integer> live = new HashMap<>();
+        synchronized (entry) {
+            entry.nodes.values().removeIf(n -> now - n.expiresAtNanos() >= 0);
+            entry.nodes.forEach((node, d) -> live.put(node, d.demand()));
+        }
+        return live;
+    }
+
+    @Override
+    public long take(String clientId, long max, double ratePerSecond, int burst) {
+        Entry entry = entry(clientId);
+        long now = clock.getAsLong();
+        synchronized (entry) {
+            if (entry.lastRefillNanos == Long.MIN_VALUE) {
+                entry.tokens = 1;
+            } else {
+                double elapsedSeconds = (now - entry.lastRefillNanos) / 1_000_000_000d;
+                entry.tokens = Math.min(Math.max(1, burst), entry.tokens + elapsedSeconds * ratePerSecond);
+            }
+            entry.lastRefillNanos = now;
+            long granted = Math.min(max, (long) entry.tokens);
+            entry.tokens -= granted;
+            return granted;
+        }
+    }
+
+    private Entry entry(String clientId) {
+        return entries.computeIfAbsent(clientId, k -> new Entry());
+    }
+
+    private record NodeDemand(int demand, long expiresAtNanos) { }
+
+    private static final class Entry {
+        final Map<String, NodeDemand> nodes = new HashMap<>();
+        double tokens;
+        long lastRefillNanos = Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,200 @@
+package dev.hsborges.proxy.budget;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Coordenador que divide a taxa global de cada credencial entre as réplicas por arrendamento (lease). A
+ * cada rodada o nó anuncia a profundidade da sua fila, calcula a sua fatia (proporcional à demanda entre os
+ * nós vivos, ou igual para todos quando ninguém tem fila) e retira do bucket global um lote de tokens que
+ * fica no lease local. O caminho quente só consome o lease, sem ida ao store.
+ *
+ * <p>Tokens de lease não usados expiram em {@code leaseTtl}; a demanda de um nó que cai expira em
+ * {@code nodeTtl}, e a fatia dele volta aos outros. Como o bucket global reabastece pela taxa de qualquer
+ * forma, nenhum token fica preso a uma réplica morta.
+ */
+public class LeasedRateBudget implements RateBudget {
+    private static final Logger log = LoggerFactory.getLogger(LeasedRateBudget.class);
+
+    /** Profundidade da fila que a faixa da credencial pode atender neste nó. */
+    @FunctionalInterface
+    public interface DemandSource {
+        int depth(String clientId, boolean pooled);
+    }
+
+    private final BudgetStore store;
+    private final String nodeId;
+    private final double ratePerSecond;
+    private final int burst;
+    private final long leaseIntervalNanos;
+    private final long leaseTtlNanos;
+    private final long nodeTtlNanos;
+    private final DemandSource demand;
+    private final LongSupplier clock;
+    private final Runnable onGrant;
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private volatile long nextRoundNanos;
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param onGrant chamado quando a rodada concede tokens, para acordar o scheduler
+     */
+    public LeasedRateBudget(BudgetStore store, String nodeId, double ratePerSecond, int burst,
+                            long leaseIntervalMs, long leaseTtlMs, long nodeTtlMs,
+                            DemandSource demand, LongSupplier clock, Runnable onGrant) {
+        this.store = store;
+        this.nodeId = nodeId;
+        this.ratePerSecond = ratePerSecond;
+        this.burst = Math.max(1, burst);
+        this.leaseIntervalNanos = TimeUnit.MILLISECONDS.toNanos(leaseIntervalMs);
+        this.leaseTtlNanos = TimeUnit.MILLISECONDS.toNanos(leaseTtlMs);
+        this.nodeTtlNanos = TimeUnit.MILLISECONDS.toNanos(nodeTtlMs);
+        this.demand = demand;
+        this.clock = clock;
+        this.onGrant = onGrant;
+        this.nextRoundNanos = clock.getAsLong();
+    }
+
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "rate-budget-" + nodeId);
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                rebalance();
+            } catch (RuntimeException e) {
+                log.warn("Falha ao renovar lease do orçamento: {}", e.getMessage());
+            }
+        }, 0, leaseIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void register(String clientId, boolean pooled) {
+        leases.computeIfAbsent(clientId, k -> new Lease(pooled));
+    }
+
+    @Override
+    public boolean tryAcquire(String clientId) {
+        Lease lease = leases.get(clientId);
+        if (lease == null) {
+            register(clientId, false);
+            return false;
+        }
+        return lease.take(clock.getAsLong());
+    }
+
+    @Override
+    public void release(String clientId) {
+        Lease lease = leases.get(clientId);
+        if (lease != null) {
+            lease.giveBack(clock.getAsLong());
+        }
+    }
+
+    @Override
+    public long nanosUntilAvailable(String clientId) {
+        Lease lease = leases.get(clientId);
+        long now = clock.getAsLong();
+        if (lease != null && lease.available(now)) {
+            return 0;
+        }
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(1), nextRoundNanos - now);
+    }
+
+    /** Uma rodada de arrendamento para todas as credenciais deste nó. */
+    public void rebalance() {
+        long now = clock.getAsLong();
+        nextRoundNanos = now + leaseIntervalNanos;
+        double slice = ratePerSecond * leaseIntervalNanos / 1_000_000_000d;
+        boolean granted = false;
+        for (Map.Entry<String, Lease> e : leases.entrySet()) {
+            String clientId = e.getKey();
+            Lease lease = e.getValue();
+            int depth = demand.depth(clientId, lease.pooled);
+            store.heartbeat(clientId, nodeId, depth, nodeTtlNanos);
+            Map<String, Integer> live = store.demand(clientId);
+            long total = 0;
+            for (int d : live.values()) {
+                total += d;
+            }
+            double share = total == 0 ? 1d / Math.max(1, live.size()) : (double) depth / total;
+            long want = lease.accrue(share * slice, burst);
+            if (want > 0) {
+                long got = store.take(clientId, want, ratePerSecond, burst);
+                if (got > 0) {
+                    lease.grant(got, now, now + leaseTtlNanos, burst);
+                    granted = true;
+                }
+            }
+        }
+        if (granted) {
+            onGrant.run();
+        }
+    }
+
+    /** Tokens arrendados por este nó para uma credencial. */
+    private static final class Lease {
+        final boolean pooled;
+        private double credit;
+        private long tokens;
+        private long expiresAtNanos;
+
+        Lease(boolean pooled) {
+            this.pooled = pooled;
+        }
+
+        synchronized boolean take(long now) {
+            if (!available(now)) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+
+        synchronized void giveBack(long now) {
+            if (now - expiresAtNanos < 0) {
+                tokens++;
+            }
+        }
+
+        synchronized boolean available(long now) {
+            if (tokens > 0 && now - expiresAtNanos >= 0) {
+                tokens = 0;
+            }
+            return tokens > 0;
+        }
+
+        /**
+         * Acumula a fatia da rodada e diz quantos tokens inteiros pedir (no máximo o burst). O crédito guarda
+         * um token além do burst para a fatia não se perder quando outro nó esvaziou o bucket antes.
+         */
+        synchronized long accrue(double amount, int burst) {
+            credit = Math.min(burst + 1, credit + amount);
+            return (long) Math.min(credit, burst);
+        }
+
+        /** Sobras ainda válidas somam ao lote novo, limitadas ao burst para o lease não acumular. */
+        synchronized void grant(long granted, long now, long expiresAt, int burst) {
+            available(now); // descarta sobras vencidas
+            credit -= granted;
+            tokens = Math.min(burst, tokens + granted);
+            expiresAtNanos = expiresAt;
+        }
+    }
+}
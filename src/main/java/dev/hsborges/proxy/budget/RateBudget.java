@@ -0,0 +1,25 @@
+package dev.hsborges.proxy.budget;
+
+/**
+ * Orçamento de chamadas ao upstream compartilhado entre réplicas, consultado por cada faixa antes do
+ * dispatch além do token bucket local. {@link #LOCAL} não impõe nada: cada réplica usa a taxa inteira.
+ */
+public interface RateBudget {
+
+    RateBudget LOCAL = new RateBudget() {
+        @Override public boolean tryAcquire(String clientId) { return true; }
+        @Override public long nanosUntilAvailable(String clientId) { return 0; }
+    };
+
+    /** Faixa criada no pool; {@code pooled} diz se ela também atende a partição compartilhada. */
+    default void register(String clientId, boolean pooled) { }
+
+    boolean tryAcquire(String clientId);
+
+    /** Devolve uma permissão obtida e não usada (por exemplo quando o bucket local recusou). */
+    default void release(String clientId) { }
+
+    long nanosUntilAvailable(String clientId);
+
+    default void close() { }
+}
@@ -0,0 +1,25 @@
+package dev.hsborges.proxy.cache;
+
+import java.util.Map;
+
+/**
+ * Entrada do cache de respostas. Guarda a consulta e a credencial de origem para que a revalidação em
+ * segundo plano possa repetir a chamada, e o instante de escrita para que a expiração não dependa de
+ * quando a entrada foi carregada.
+ *
+ * @param body       corpo JSON em UTF-8, devolvido ao cliente sem nova serialização
+ * @param status     status HTTP devolvido ao cliente; fora de 2xx a entrada é negativa
+ * @param prefetched escrita pelo prefetch em slot ocioso, não por um chamador
+ */
+public record CachedScore(byte[] body,
+                          int status,
+                          long writtenAtMillis,
+                          boolean prefetched,
+                          Map<String, String> queryParams,
+                          String clientId) {
+
+    /** Resposta de erro ou fallback do upstream, cacheada por pouco tempo. */
+    public boolean negative() {
+        return status < 200 || status >= 300;
+    }
+}
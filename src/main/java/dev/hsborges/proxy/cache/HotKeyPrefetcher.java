@@ -0,0 +1,55 @@
+package dev.hsborges.proxy.cache;
+
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.queue.InFlightRegistry;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Escolhe o que revalidar com o orçamento ocioso do upstream: entre as chaves mais frequentes do cache
+ * (sketch TinyLFU do Caffeine), a primeira que está perto de deixar de ser fresca e que a credencial
+ * pode atender. O scheduler só consulta o prefetcher com a fila vazia, então chamadores reais sempre
+ * passam na frente.
+ */
+@Component
+public class HotKeyPrefetcher {
+    private final ScoreCache cache;
+    private final InFlightRegistry inFlight;
+    private final ProxyConfig config;
+
+    public HotKeyPrefetcher(ScoreCache cache, InFlightRegistry inFlight, ProxyConfig config) {
+        this.cache = cache;
+        this.inFlight = inFlight;
+        this.config = config;
+    }
+
+    /**
+     * Requisição de prefetch já registrada como pendente (chamadores que chegarem se anexam a ela) ou
+     * {@code null} se não houver candidato para a credencial.
+     */
+    public PrioritizedRequest next(String clientId, boolean pooled) {
+        if (!config.isPrefetchEnabled()) {
+            return null;
+        }
+        for (Map.Entry<ScoreKey, CachedScore> e : cache.hottest(config.getPrefetchCandidates()).entrySet()) {
+            CachedScore entry = e.getValue();
+            if (entry.negative() || cache.freshRemainingMs(entry) > config.getPrefetchWindowMs()) {
+                continue;
+            }
+            String owner = entry.clientId();
+            boolean servable = owner == null || owner.isBlank() ? pooled : owner.equals(clientId);
+            if (!servable || inFlight.get(e.getKey()) != null) {
+                continue;
+            }
+            PrioritizedRequest req = new PrioritizedRequest(e.getKey(), "/score", entry.queryParams(), Map.of(), owner,
+                    PrioritizedRequest.Priority.LOW, Instant.now().plusMillis(config.getRequestTtlMs()));
+            if (inFlight.register(e.getKey(), req) == req) {
+                return req;
+            }
+        }
+        return null;
+    }
+}
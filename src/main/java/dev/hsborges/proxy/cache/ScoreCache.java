@@ -0,0 +1,139 @@
+package dev.hsborges.proxy.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.persistence.ScoreJournal;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.upstream.UpstreamResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Cache de respostas com stale-while-revalidate: depois de {@code cache-ttl-ms} a entrada ainda é
+ * servida por {@code cache-stale-grace-ms} enquanto uma revalidação de baixa prioridade passa pela fila.
+ * Erros e fallbacks do upstream ficam cacheados por {@code cache-negative-ttl-ms}, com o status original,
+ * para que uma chave com falha não drene o orçamento; mas nunca substituem uma entrada boa, que continua
+ * sendo servida até o fim da sua janela.
+ */
+@Component
+public class ScoreCache {
+
+    public enum State { FRESH, STALE, NEGATIVE }
+
+    private final Cache<ScoreKey, CachedScore> cache;
+    private final ScoreJournal journal;
+    private final long ttlMs;
+    private final Counter hit;
+    private final Counter staleHit;
+    private final Counter negativeHit;
+    private final Counter miss;
+    private final Counter refresh;
+    private final Counter prefetchHit;
+
+    public ScoreCache(Cache<ScoreKey, CachedScore> responseCache, ScoreJournal journal, ProxyConfig config,
+                      MeterRegistry registry) {
+        this.cache = responseCache;
+        this.journal = journal;
+        this.ttlMs = config.getCacheTtlMs();
+        this.hit = registry.counter("proxy.cache.hit");
+        this.staleHit = registry.counter("proxy.cache.stale");
+        this.negativeHit = registry.counter("proxy.cache.negative");
+        this.miss = registry.counter("proxy.cache.miss");
+        this.refresh = registry.counter("proxy.cache.refresh");
+        this.prefetchHit = registry.counter("proxy.prefetch.hits");
+    }
+
+    /** Busca de um chamador: qualquer entrada viva, contabilizada nas métricas de cache. */
+    public CachedScore get(ScoreKey key) {
+        CachedScore entry = cache.getIfPresent(key);
+        if (entry == null) {
+            miss.increment();
+            return null;
+        }
+        switch (state(entry)) {
+            case FRESH -> hit.increment();
+            case STALE -> staleHit.increment();
+            case NEGATIVE -> negativeHit.increment();
+        }
+        if (entry.prefetched()) {
+            prefetchHit.increment();
+        }
+        return entry;
+    }
+
+    /** Entrada que dispensa ir ao upstream (fresca ou negativa), sem afetar métricas. */
+    public CachedScore getFresh(ScoreKey key) {
+        CachedScore entry = cache.getIfPresent(key);
+        return entry == null || state(entry) == State.STALE ? null : entry;
+    }
+
+    public void put(ScoreKey key, UpstreamResponse response, PrioritizedRequest req, boolean prefetched) {
+        CachedScore entry = entry(response, req, prefetched);
+        cache.put(key, entry);
+        journal.cacheEntry(key, entry);
+    }
+
+    /**
+     * Falha do upstream (429, 5xx ou fallback): vira entrada negativa só se não houver entrada positiva
+     * para a chave. Uma revalidação que falha mantém a entrada stale em vez de trocá-la pelo erro.
+     */
+    public void putFailure(ScoreKey key, UpstreamResponse response, PrioritizedRequest req) {
+        CachedScore failure = entry(response, req, false);
+        CachedScore stored = cache.asMap().compute(key,
+                (k, current) -> current != null && !current.negative() ? current : failure);
+        if (stored == failure) {
+            journal.cacheEntry(key, failure);
+        }
+    }
+
+    private static CachedScore entry(UpstreamResponse response, PrioritizedRequest req, boolean prefetched) {
+        return new CachedScore(response.body(), response.isSuccess() ? 200 : response.statusCode(),
+                System.currentTimeMillis(), prefetched, req.getQueryParams(), req.getClientId());
+    }
+
+    /**
+     * Carga em lote a partir do journal. A expiração usa o {@code writtenAtMillis} gravado, então entradas
+     * restauradas mantêm o TTL original; não regrava no journal.
+     */
+    public void restore(Map<ScoreKey, CachedScore> entries) {
+        cache.putAll(entries);
+    }
+
+    /** Visão das entradas vivas, para a compactação do journal. */
+    public Map<ScoreKey, CachedScore> asMap() {
+        return cache.asMap();
+    }
+
+    /** Entradas mais frequentes segundo o sketch de frequência do Caffeine, da mais quente para a menos. */
+    public Map<ScoreKey, CachedScore> hottest(int limit) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.hottest(limit))
+                .orElse(Map.of());
+    }
+
+    /** Quanto falta para a entrada deixar de ser fresca; negativo se já estiver stale. */
+    public long freshRemainingMs(CachedScore entry) {
+        return entry.writtenAtMillis() + ttlMs - System.currentTimeMillis();
+    }
+
+    public State state(CachedScore entry) {
+        if (entry.negative()) {
+            return State.NEGATIVE;
+        }
+        return System.currentTimeMillis() - entry.writtenAtMillis() < ttlMs ? State.FRESH : State.STALE;
+    }
+
+    /** Quanto resta da janela de tolerância de uma entrada stale. */
+    public long remainingLifeMs(ScoreKey key) {
+        return cache.policy().expireVariably()
+                .flatMap(policy -> policy.getExpiresAfter(key))
+                .map(Duration::toMillis)
+                .orElse(0L);
+    }
+
+    public void recordRefresh() { refresh.increment(); }
+}
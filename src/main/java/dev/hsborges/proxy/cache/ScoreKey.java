@@ -0,0 +1,106 @@
+package dev.hsborges.proxy.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Chave canônica de uma consulta, compartilhada por cache, single-flight e prefetch. É formada pelo
+ * tenant (o {@code x-client-id} explícito, ou vazio para o pool) e pela query normalizada: parâmetros em
+ * ordem de nome, codificados como em {@link java.net.URLEncoder}, sem o parâmetro {@code clientId} (que
+ * já está no tenant). O hash é calculado uma única vez.
+ */
+public final class ScoreKey {
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final String CLIENT_ID_PARAM = "clientId";
+
+    private final String tenant;
+    private final String query;
+    private final int hash;
+
+    private ScoreKey(String tenant, String query) {
+        this.tenant = tenant;
+        this.query = query;
+        this.hash = 31 * tenant.hashCode() + query.hashCode();
+    }
+
+    public static ScoreKey of(Map<String, String> params, String tenant) {
+        String t = tenant == null ? "" : tenant;
+        if (params == null || params.isEmpty()) {
+            return new ScoreKey(t, "");
+        }
+        StringBuilder sb = new StringBuilder(16 * params.size());
+        if (params.size() == 1) {
+            Map.Entry<String, String> only = params.entrySet().iterator().next();
+            appendParam(sb, only.getKey(), only.getValue());
+        } else {
+            String[] names = params.keySet().toArray(new String[0]);
+            Arrays.sort(names);
+            for (String name : names) {
+                appendParam(sb, name, params.get(name));
+            }
+        }
+        return new ScoreKey(t, sb.toString());
+    }
+
+    /** Reconstrói a chave a partir das partes já canônicas, como gravadas por {@link #query()}. */
+    public static ScoreKey ofCanonical(String tenant, String query) {
+        return new ScoreKey(tenant == null ? "" : tenant, query == null ? "" : query);
+    }
+
+    public String tenant() { return tenant; }
+    public String query() { return query; }
+
+    private static void appendParam(StringBuilder sb, String name, String value) {
+        if (CLIENT_ID_PARAM.equals(name)) {
+            return;
+        }
+        if (!sb.isEmpty()) {
+            sb.append('&');
+        }
+        appendEncoded(sb, name);
+        sb.append('=');
+        appendEncoded(sb, value == null ? "" : value);
+    }
+
+    // mesma saída de URLEncoder.encode(s, UTF_8), escrita direto no builder
+    private static void appendEncoded(StringBuilder sb, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '*') {
+                sb.append(c);
+            } else if (c == ' ') {
+                sb.append('+');
+            } else if (c < 0x80) {
+                appendHex(sb, c);
+            } else {
+                int end = Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))
+                        ? i + 2 : i + 1;
+                for (byte b : s.substring(i, end).getBytes(StandardCharsets.UTF_8)) {
+                    appendHex(sb, b & 0xFF);
+                }
+                i = end - 1;
+            }
+        }
+    }
+
+    private static void appendHex(StringBuilder sb, int b) {
+        sb.append('%').append(HEX[b >> 4]).append(HEX[b & 0xF]);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ScoreKey other)) return false;
+        return hash == other.hash && tenant.equals(other.tenant) && query.equals(other.query);
+    }
+
+    @Override
+    public int hashCode() { return hash; }
+
+    @Override
+    public String toString() {
+        return tenant.isEmpty() ? query : tenant + "|" + query;
+    }
+}
@@ -2,31 +2,219 @@ package dev.hsborges.proxy.config;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import dev.hsborges.proxy.budget.BudgetStore;
+import dev.hsborges.proxy.budget.InMemoryBudgetStore;
+import dev.hsborges.proxy.budget.LeasedRateBudget;
+import dev.hsborges.proxy.budget.RateBudget;
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.job.ScoreJob;
+import dev.hsborges.proxy.persistence.MappedScoreJournal;
+import dev.hsborges.proxy.persistence.ScoreJournal;
+import dev.hsborges.proxy.queue.InFlightRegistry;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
 import dev.hsborges.proxy.queue.RequestQueue;
+import dev.hsborges.proxy.scheduler.AimdRateController;
+import dev.hsborges.proxy.scheduler.PenaltyStepRateController;
+import dev.hsborges.proxy.scheduler.RateControllerFactory;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.UUID;
 
 @Configuration
+@ImportRuntimeHints(ProxyRuntimeHints.class)
 public class Beans {
 
     @Bean
     public RequestQueue requestQueue(ProxyConfig config, MeterRegistry registry) {
-        RequestQueue q = new RequestQueue(config.getQueueMaxSize());
+        int[] weights = {config.getQueueWeightHigh(), config.getQueueWeightMedium(), config.getQueueWeightLow()};
+        RequestQueue q = new RequestQueue(config.getQueueMaxSize(), config.getJobBacklogMaxSize(), weights,
+                config.getQueueAgingMs());
         registry.gauge("proxy.queue.size", q, RequestQueue::size);
+        registry.gauge("proxy.jobs.backlog", q, RequestQueue::backlogSize);
+        for (PrioritizedRequest.Priority p : PrioritizedRequest.Priority.values()) {
+            Gauge.builder("proxy.queue.depth", q, queue -> queue.depth(p))
+                    .tag("priority", p.name())
+                    .register(registry);
+        }
+        FunctionCounter.builder("proxy.queue.aged", q, RequestQueue::agedCount).register(registry);
         return q;
     }
 
     @Bean
-    public Cache<String, String> responseCache(ProxyConfig config) {
+    public InFlightRegistry inFlightRegistry(MeterRegistry registry) {
+        InFlightRegistry inFlight = new InFlightRegistry();
+        registry.gauge("proxy.inflight.size", inFlight, InFlightRegistry::size);
+        return inFlight;
+    }
+
+    @Bean
+    public RateControllerFactory rateControllerFactory(ProxyConfig config) {
+        return switch (config.getRateControl().toLowerCase()) {
+            case "penalty-step" -> () -> new PenaltyStepRateController(
+                    config.getRateLimitPerSecond(), config.getPenaltyExtraDelayMs());
+            case "aimd" -> () -> new AimdRateController(
+                    config.getRateLimitPerSecond(),
+                    config.getRateControlMinPerSecond(),
+                    config.getRateControlMaxPerSecond(),
+                    config.getRateControlIncreaseStep(),
+                    config.getRateControlDecreaseFactor(),
+                    config.getRateControlMaxConcurrency(),
+                    config.getPenaltyExtraDelayMs(),
+                    config.getRateControlHealthyWindow());
+            default -> throw new IllegalArgumentException("Unknown proxy.rate-control: " + config.getRateControl());
+        };
+    }
+
+    /**
+     * {@code shared} exige um bean {@link BudgetStore} sobre o key-value compartilhado pelas réplicas. Sem
+     * ele, ou com o {@link InMemoryBudgetStore} embarcado (que cada processo teria o seu), o startup falha:
+     * cada réplica acharia que tem a taxa inteira.
+     */
+    @Bean(destroyMethod = "close")
+    public RateBudget rateBudget(ProxyConfig config, RequestQueue queue, ObjectProvider<BudgetStore> budgetStores) {
+        return switch (config.getRateBudget().toLowerCase()) {
+            case "local" -> RateBudget.LOCAL;
+            case "shared" -> {
+                BudgetStore budgetStore = budgetStores.getIfAvailable();
+                if (budgetStore == null || budgetStore instanceof InMemoryBudgetStore) {
+                    throw new IllegalStateException("proxy.rate-budget=shared exige um bean BudgetStore sobre o "
+                            + "key-value compartilhado pelas réplicas; o InMemoryBudgetStore só vale dentro de um processo");
+                }
+                String nodeId = config.getRateBudgetNodeId() == null || config.getRateBudgetNodeId().isBlank()
+                        ? UUID.randomUUID().toString() : config.getRateBudgetNodeId();
+                LeasedRateBudget budget = new LeasedRateBudget(budgetStore, nodeId,
+                        config.getRateLimitPerSecond(), config.getRateLimitBurst(),
+                        config.getRateBudgetLeaseIntervalMs(), config.getRateBudgetLeaseTtlMs(),
+                        config.getRateBudgetNodeTtlMs(),
+                        (clientId, pooled) -> queue.partitionSize(clientId)
+                                + (pooled ? queue.partitionSize(RequestQueue.SHARED) : 0),
+                        System::nanoTime, queue::signal);
+                budget.start();
+                yield budget;
+            }
+            default -> throw new IllegalArgumentException("Unknown proxy.rate-budget: " + config.getRateBudget());
+        };
+    }
+
+    /**
+     * Pool dedicado ao upstream: poucas conexões longas reaproveitadas entre as faixas, com despejo em
+     * segundo plano das ociosas antes que o servidor as feche.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider upstreamConnectionProvider(ProxyConfig config) {
+        return ConnectionProvider.builder("upstream")
+                .maxConnections(config.getUpstreamMaxConnections())
+                .pendingAcquireTimeout(Duration.ofMillis(config.getUpstreamPendingAcquireTimeoutMs()))
+                .maxIdleTime(Duration.ofMillis(config.getUpstreamMaxIdleTimeMs()))
+                .maxLifeTime(Duration.ofMillis(config.getUpstreamMaxLifeTimeMs()))
+                .evictInBackground(Duration.ofMillis(config.getUpstreamEvictIntervalMs()))
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public HttpClient upstreamHttpClient(ProxyConfig config, ConnectionProvider upstreamConnectionProvider) {
+        HttpClient client = HttpClient.create(upstreamConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) config.getUpstreamConnectTimeoutMs())
+                .responseTimeout(Duration.ofMillis(config.getUpstreamResponseTimeoutMs()))
+                .keepAlive(true)
+                // negocia gzip e descomprime antes do transformador
+                .compress(config.isUpstreamCompression())
+                .resolver(spec -> spec.cacheMaxTimeToLive(Duration.ofMillis(config.getUpstreamDnsCacheTtlMs())));
+        // h2 exige ALPN; em http puro (simulador, ambiente local) fica no HTTP/1.1
+        if (config.isUpstreamHttp2() && config.getUpstreamBaseUrl().startsWith("https:")) {
+            client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+        return client;
+    }
+
+    @Bean(destroyMethod = "close")
+    public ScoreJournal scoreJournal(ProxyConfig config) throws IOException {
+        if (!config.isJournalEnabled()) {
+            return ScoreJournal.NOOP;
+        }
+        return MappedScoreJournal.open(Path.of(config.getJournalDir()), config.getJournalSegmentBytes());
+    }
+
+    @Bean
+    public Cache<ScoreKey, CachedScore> responseCache(ProxyConfig config) {
+        long positiveLifeMs = config.getCacheTtlMs() + config.getCacheStaleGraceMs();
+        long negativeLifeMs = config.getCacheNegativeTtlMs();
         return Caffeine.newBuilder()
                 .maximumSize(config.getCacheMaxSize())
-                .expireAfterWrite(Duration.ofMillis(config.getCacheTtlMs()))
+                .expireAfter(new Expiry<ScoreKey, CachedScore>() {
+                    // a vida conta a partir de writtenAtMillis, não do momento da inserção
+                    private long remainingNanos(CachedScore value) {
+                        long lifeMs = value.negative() ? negativeLifeMs : positiveLifeMs;
+                        long remainingMs = value.writtenAtMillis() + lifeMs - System.currentTimeMillis();
+                        return Duration.ofMillis(Math.max(0, remainingMs)).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterCreate(ScoreKey key, CachedScore value, long currentTime) {
+                        return remainingNanos(value);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(ScoreKey key, CachedScore value, long currentTime, long currentDuration) {
+                        return remainingNanos(value);
+                    }
+
+                    @Override
+                    public long expireAfterRead(ScoreKey key, CachedScore value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
                 .recordStats()
                 .build();
     }
-}
 
+    @Bean
+    public Cache<String, ScoreJob> jobCache(ProxyConfig config) {
+        long resultTtlMs = config.getJobResultTtlMs();
+        return Caffeine.newBuilder()
+                // pendentes pesam 0: nunca saem por tamanho, só resultados prontos disputam as vagas
+                .maximumWeight(config.getJobResultMaxSize())
+                .weigher((String id, ScoreJob job) -> job.isDone() ? 1 : 0)
+                .expireAfter(new Expiry<String, ScoreJob>() {
+                    private long remainingNanos(ScoreJob job) {
+                        if (!job.isDone()) {
+                            return Long.MAX_VALUE;
+                        }
+                        long remainingMs = job.completedAtMillis() + resultTtlMs - System.currentTimeMillis();
+                        return Duration.ofMillis(Math.max(0, remainingMs)).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterCreate(String id, ScoreJob job, long currentTime) {
+                        return remainingNanos(job);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String id, ScoreJob job, long currentTime, long currentDuration) {
+                        return remainingNanos(job);
+                    }
 
+                    @Override
+                    public long expireAfterRead(String id, ScoreJob job, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+}
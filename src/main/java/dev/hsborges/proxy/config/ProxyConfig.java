@@ -3,40 +3,197 @@ package dev.hsborges.proxy.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Configuration
 @ConfigurationProperties(prefix = "proxy")
 public class ProxyConfig {
     private String upstreamBaseUrl = "https://score.hsborges.dev";
     private String clientId;
+    private List<String> clientIds = new ArrayList<>(); // pool de credenciais adicionais
+    private int adhocClientIdsMax = 16; // x-client-id fora do pool com faixa própria; 0 = só o pool
     private String scorePath = "/score";
     private int queueMaxSize = 100;
     private long queueOfferTimeoutMs = 50;
+    private int queueWeightHigh = 8;
+    private int queueWeightMedium = 4;
+    private int queueWeightLow = 1;
+    private long queueAgingMs = 2500;
     private long requestTtlMs = 10000;
-    private long schedulerBaseIntervalMs = 1000; // 1 req/s
+    private long requestMaxTtlMs = 30000; // teto para o prazo informado em x-deadline-ms
+    private double rateLimitPerSecond = 1.0; // 1 req/s
+    private int rateLimitBurst = 1;
+    private long rateLimitGuardMs = 100; // folga após a 1a chamada de cada conexão nova
+    private String rateControl = "aimd"; // aimd | penalty-step
+    private double rateControlMinPerSecond = 0.2;
+    private double rateControlMaxPerSecond = 1.0;
+    private double rateControlIncreaseStep = 0.05;
+    private double rateControlDecreaseFactor = 0.5;
+    private int rateControlMaxConcurrency = 1;
+    private int rateControlHealthyWindow = 10;
     private long penaltyExtraDelayMs = 2000; // +2s
     private int cacheMaxSize = 1000;
     private long cacheTtlMs = 30000;
+    private long cacheStaleGraceMs = 60000; // serve stale enquanto revalida
+    private long cacheNegativeTtlMs = 5000; // erros/fallbacks do upstream
+    private boolean prefetchEnabled = true;
+    private long prefetchWindowMs = 10000; // revalida chaves quentes que deixam de ser frescas nesse intervalo
+    private int prefetchCandidates = 32;
+    private int batchMaxSize = 200; // consultas por POST /proxy/score/batch
+    private long batchTtlMs = 120000; // prazo de cada item do lote, ritmado pela taxa do upstream
+    private double batchQueueShare = 0.5; // fração das vagas livres da fila que um lote pode ocupar
+    private int jobBacklogMaxSize = 5000; // jobs aguardando upstream, fora de queueMaxSize
+    private int jobResultMaxSize = 10000; // resultados prontos guardados para consulta
+    private long jobResultTtlMs = 600000;
+    private long jobPollMaxMs = 25000; // long-poll; abaixo de spring.mvc.async.request-timeout
+    private boolean journalEnabled = false; // persiste cache e jobs em journal mapeado em memória
+    private String journalDir = "data/journal";
+    private int journalSegmentBytes = 64 * 1024 * 1024;
+    private long journalFlushIntervalMs = 1000;
+    private long journalCompactIntervalMs = 300000;
+    private String rateBudget = "local"; // local | shared (taxa global dividida entre réplicas)
+    private String rateBudgetNodeId; // padrão: hostname
+    private long rateBudgetLeaseIntervalMs = 250;
+    private long rateBudgetLeaseTtlMs = 1000; // tokens arrendados e não usados expiram
+    private long rateBudgetNodeTtlMs = 3000; // réplica sem heartbeat perde a fatia
+    private int upstreamMaxConnections = 16;
+    private long upstreamPendingAcquireTimeoutMs = 5000;
+    private long upstreamMaxIdleTimeMs = 30000; // abaixo do keep-alive do upstream, para não reusar conexão já fechada
+    private long upstreamMaxLifeTimeMs = 300000;
+    private long upstreamEvictIntervalMs = 10000;
+    private long upstreamConnectTimeoutMs = 2000;
+    private long upstreamResponseTimeoutMs = 3000;
+    private boolean upstreamHttp2 = true; // só com https; cai para HTTP/1.1 se o servidor não negociar h2
+    private boolean upstreamCompression = true;
+    private long upstreamDnsCacheTtlMs = 60000;
+    private boolean upstreamWarmup = true; // abre conexões (e o handshake TLS) no startup
+    private int upstreamWarmupConnections = 2;
+    private List<String> upstreamForwardHeaders = new ArrayList<>(
+            List.of("accept-language", "x-request-id", "x-correlation-id", "traceparent", "tracestate"));
 
     public String getUpstreamBaseUrl() { return upstreamBaseUrl; }
     public void setUpstreamBaseUrl(String upstreamBaseUrl) { this.upstreamBaseUrl = upstreamBaseUrl; }
     public String getClientId() { return clientId; }
     public void setClientId(String clientId) { this.clientId = clientId; }
+    public List<String> getClientIds() { return clientIds; }
+    public void setClientIds(List<String> clientIds) { this.clientIds = clientIds; }
+    public int getAdhocClientIdsMax() { return adhocClientIdsMax; }
+    public void setAdhocClientIdsMax(int adhocClientIdsMax) { this.adhocClientIdsMax = adhocClientIdsMax; }
     public String getScorePath() { return scorePath; }
     public void setScorePath(String scorePath) { this.scorePath = scorePath; }
     public int getQueueMaxSize() { return queueMaxSize; }
     public void setQueueMaxSize(int queueMaxSize) { this.queueMaxSize = queueMaxSize; }
     public long getQueueOfferTimeoutMs() { return queueOfferTimeoutMs; }
     public void setQueueOfferTimeoutMs(long queueOfferTimeoutMs) { this.queueOfferTimeoutMs = queueOfferTimeoutMs; }
+    public int getQueueWeightHigh() { return queueWeightHigh; }
+    public void setQueueWeightHigh(int queueWeightHigh) { this.queueWeightHigh = queueWeightHigh; }
+    public int getQueueWeightMedium() { return queueWeightMedium; }
+    public void setQueueWeightMedium(int queueWeightMedium) { this.queueWeightMedium = queueWeightMedium; }
+    public int getQueueWeightLow() { return queueWeightLow; }
+    public void setQueueWeightLow(int queueWeightLow) { this.queueWeightLow = queueWeightLow; }
+    public long getQueueAgingMs() { return queueAgingMs; }
+    public void setQueueAgingMs(long queueAgingMs) { this.queueAgingMs = queueAgingMs; }
     public long getRequestTtlMs() { return requestTtlMs; }
     public void setRequestTtlMs(long requestTtlMs) { this.requestTtlMs = requestTtlMs; }
-    public long getSchedulerBaseIntervalMs() { return schedulerBaseIntervalMs; }
-    public void setSchedulerBaseIntervalMs(long schedulerBaseIntervalMs) { this.schedulerBaseIntervalMs = schedulerBaseIntervalMs; }
+    public long getRequestMaxTtlMs() { return requestMaxTtlMs; }
+    public void setRequestMaxTtlMs(long requestMaxTtlMs) { this.requestMaxTtlMs = requestMaxTtlMs; }
+    public double getRateLimitPerSecond() { return rateLimitPerSecond; }
+    public void setRateLimitPerSecond(double rateLimitPerSecond) { this.rateLimitPerSecond = rateLimitPerSecond; }
+    public int getRateLimitBurst() { return rateLimitBurst; }
+    public void setRateLimitBurst(int rateLimitBurst) { this.rateLimitBurst = rateLimitBurst; }
+    public long getRateLimitGuardMs() { return rateLimitGuardMs; }
+    public void setRateLimitGuardMs(long rateLimitGuardMs) { this.rateLimitGuardMs = rateLimitGuardMs; }
+    public String getRateControl() { return rateControl; }
+    public void setRateControl(String rateControl) { this.rateControl = rateControl; }
+    public double getRateControlMinPerSecond() { return rateControlMinPerSecond; }
+    public void setRateControlMinPerSecond(double rateControlMinPerSecond) { this.rateControlMinPerSecond = rateControlMinPerSecond; }
+    public double getRateControlMaxPerSecond() { return rateControlMaxPerSecond; }
+    public void setRateControlMaxPerSecond(double rateControlMaxPerSecond) { this.rateControlMaxPerSecond = rateControlMaxPerSecond; }
+    public double getRateControlIncreaseStep() { return rateControlIncreaseStep; }
+    public void setRateControlIncreaseStep(double rateControlIncreaseStep) { this.rateControlIncreaseStep = rateControlIncreaseStep; }
+    public double getRateControlDecreaseFactor() { return rateControlDecreaseFactor; }
+    public void setRateControlDecreaseFactor(double rateControlDecreaseFactor) { this.rateControlDecreaseFactor = rateControlDecreaseFactor; }
+    public int getRateControlMaxConcurrency() { return rateControlMaxConcurrency; }
+    public void setRateControlMaxConcurrency(int rateControlMaxConcurrency) { this.rateControlMaxConcurrency = rateControlMaxConcurrency; }
+    public int getRateControlHealthyWindow() { return rateControlHealthyWindow; }
+    public void setRateControlHealthyWindow(int rateControlHealthyWindow) { this.rateControlHealthyWindow = rateControlHealthyWindow; }
     public long getPenaltyExtraDelayMs() { return penaltyExtraDelayMs; }
     public void setPenaltyExtraDelayMs(long penaltyExtraDelayMs) { this.penaltyExtraDelayMs = penaltyExtraDelayMs; }
     public int getCacheMaxSize() { return cacheMaxSize; }
     public void setCacheMaxSize(int cacheMaxSize) { this.cacheMaxSize = cacheMaxSize; }
     public long getCacheTtlMs() { return cacheTtlMs; }
     public void setCacheTtlMs(long cacheTtlMs) { this.cacheTtlMs = cacheTtlMs; }
+    public long getCacheStaleGraceMs() { return cacheStaleGraceMs; }
+    public void setCacheStaleGraceMs(long cacheStaleGraceMs) { this.cacheStaleGraceMs = cacheStaleGraceMs; }
+    public long getCacheNegativeTtlMs() { return cacheNegativeTtlMs; }
+    public void setCacheNegativeTtlMs(long cacheNegativeTtlMs) { this.cacheNegativeTtlMs = cacheNegativeTtlMs; }
+    public boolean isPrefetchEnabled() { return prefetchEnabled; }
+    public void setPrefetchEnabled(boolean prefetchEnabled) { this.prefetchEnabled = prefetchEnabled; }
+    public long getPrefetchWindowMs() { return prefetchWindowMs; }
+    public void setPrefetchWindowMs(long prefetchWindowMs) { this.prefetchWindowMs = prefetchWindowMs; }
+    public int getPrefetchCandidates() { return prefetchCandidates; }
+    public void setPrefetchCandidates(int prefetchCandidates) { this.prefetchCandidates = prefetchCandidates; }
+    public int getBatchMaxSize() { return batchMaxSize; }
+    public void setBatchMaxSize(int batchMaxSize) { this.batchMaxSize = batchMaxSize; }
+    public long getBatchTtlMs() { return batchTtlMs; }
+    public void setBatchTtlMs(long batchTtlMs) { this.batchTtlMs = batchTtlMs; }
+    public double getBatchQueueShare() { return batchQueueShare; }
+    public void setBatchQueueShare(double batchQueueShare) { this.batchQueueShare = batchQueueShare; }
+    public int getJobBacklogMaxSize() { return jobBacklogMaxSize; }
+    public void setJobBacklogMaxSize(int jobBacklogMaxSize) { this.jobBacklogMaxSize = jobBacklogMaxSize; }
+    public int getJobResultMaxSize() { return jobResultMaxSize; }
+    public void setJobResultMaxSize(int jobResultMaxSize) { this.jobResultMaxSize = jobResultMaxSize; }
+    public long getJobResultTtlMs() { return jobResultTtlMs; }
+    public void setJobResultTtlMs(long jobResultTtlMs) { this.jobResultTtlMs = jobResultTtlMs; }
+    public long getJobPollMaxMs() { return jobPollMaxMs; }
+    public void setJobPollMaxMs(long jobPollMaxMs) { this.jobPollMaxMs = jobPollMaxMs; }
+    public boolean isJournalEnabled() { return journalEnabled; }
+    public void setJournalEnabled(boolean journalEnabled) { this.journalEnabled = journalEnabled; }
+    public String getJournalDir() { return journalDir; }
+    public void setJournalDir(String journalDir) { this.journalDir = journalDir; }
+    public int getJournalSegmentBytes() { return journalSegmentBytes; }
+    public void setJournalSegmentBytes(int journalSegmentBytes) { this.journalSegmentBytes = journalSegmentBytes; }
+    public long getJournalFlushIntervalMs() { return journalFlushIntervalMs; }
+    public void setJournalFlushIntervalMs(long journalFlushIntervalMs) { this.journalFlushIntervalMs = journalFlushIntervalMs; }
+    public long getJournalCompactIntervalMs() { return journalCompactIntervalMs; }
+    public void setJournalCompactIntervalMs(long journalCompactIntervalMs) { this.journalCompactIntervalMs = journalCompactIntervalMs; }
+    public String getRateBudget() { return rateBudget; }
+    public void setRateBudget(String rateBudget) { this.rateBudget = rateBudget; }
+    public String getRateBudgetNodeId() { return rateBudgetNodeId; }
+    public void setRateBudgetNodeId(String rateBudgetNodeId) { this.rateBudgetNodeId = rateBudgetNodeId; }
+    public long getRateBudgetLeaseIntervalMs() { return rateBudgetLeaseIntervalMs; }
+    public void setRateBudgetLeaseIntervalMs(long rateBudgetLeaseIntervalMs) { this.rateBudgetLeaseIntervalMs = rateBudgetLeaseIntervalMs; }
+    public long getRateBudgetLeaseTtlMs() { return rateBudgetLeaseTtlMs; }
+    public void setRateBudgetLeaseTtlMs(long rateBudgetLeaseTtlMs) { this.rateBudgetLeaseTtlMs = rateBudgetLeaseTtlMs; }
+    public long getRateBudgetNodeTtlMs() { return rateBudgetNodeTtlMs; }
+    public void setRateBudgetNodeTtlMs(long rateBudgetNodeTtlMs) { this.rateBudgetNodeTtlMs = rateBudgetNodeTtlMs; }
+    public int getUpstreamMaxConnections() { return upstreamMaxConnections; }
+    public void setUpstreamMaxConnections(int upstreamMaxConnections) { this.upstreamMaxConnections = upstreamMaxConnections; }
+    public long getUpstreamPendingAcquireTimeoutMs() { return upstreamPendingAcquireTimeoutMs; }
+    public void setUpstreamPendingAcquireTimeoutMs(long upstreamPendingAcquireTimeoutMs) { this.upstreamPendingAcquireTimeoutMs = upstreamPendingAcquireTimeoutMs; }
+    public long getUpstreamMaxIdleTimeMs() { return upstreamMaxIdleTimeMs; }
+    public void setUpstreamMaxIdleTimeMs(long upstreamMaxIdleTimeMs) { this.upstreamMaxIdleTimeMs = upstreamMaxIdleTimeMs; }
+    public long getUpstreamMaxLifeTimeMs() { return upstreamMaxLifeTimeMs; }
+    public void setUpstreamMaxLifeTimeMs(long upstreamMaxLifeTimeMs) { this.upstreamMaxLifeTimeMs = upstreamMaxLifeTimeMs; }
+    public long getUpstreamEvictIntervalMs() { return upstreamEvictIntervalMs; }
+    public void setUpstreamEvictIntervalMs(long upstreamEvictIntervalMs) { this.upstreamEvictIntervalMs = upstreamEvictIntervalMs; }
+    public long getUpstreamConnectTimeoutMs() { return upstreamConnectTimeoutMs; }
+    public void setUpstreamConnectTimeoutMs(long upstreamConnectTimeoutMs) { this.upstreamConnectTimeoutMs = upstreamConnectTimeoutMs; }
+    public long getUpstreamResponseTimeoutMs() { return upstreamResponseTimeoutMs; }
+    public void setUpstreamResponseTimeoutMs(long upstreamResponseTimeoutMs) { this.upstreamResponseTimeoutMs = upstreamResponseTimeoutMs; }
+    public boolean isUpstreamHttp2() { return upstreamHttp2; }
+    public void setUpstreamHttp2(boolean upstreamHttp2) { this.upstreamHttp2 = upstreamHttp2; }
+    public boolean isUpstreamCompression() { return upstreamCompression; }
+    public void setUpstreamCompression(boolean upstreamCompression) { this.upstreamCompression = upstreamCompression; }
+    public long getUpstreamDnsCacheTtlMs() { return upstreamDnsCacheTtlMs; }
+    public void setUpstreamDnsCacheTtlMs(long upstreamDnsCacheTtlMs) { this.upstreamDnsCacheTtlMs = upstreamDnsCacheTtlMs; }
+    public boolean isUpstreamWarmup() { return upstreamWarmup; }
+    public void setUpstreamWarmup(boolean upstreamWarmup) { this.upstreamWarmup = upstreamWarmup; }
+    public int getUpstreamWarmupConnections() { return upstreamWarmupConnections; }
+    public void setUpstreamWarmupConnections(int upstreamWarmupConnections) { this.upstreamWarmupConnections = upstreamWarmupConnections; }
+    public List<String> getUpstreamForwardHeaders() { return upstreamForwardHeaders; }
+    public void setUpstreamForwardHeaders(List<String> upstreamForwardHeaders) { this.upstreamForwardHeaders = upstreamForwardHeaders; }
 }
 
 
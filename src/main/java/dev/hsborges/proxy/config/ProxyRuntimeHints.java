@@ -0,0 +1,56 @@
+package dev.hsborges.proxy.config;
+
+import dev.hsborges.proxy.upstream.UpstreamClient;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+/**
+ * Hints de reflexão para a imagem nativa (profile {@code native}); no JVM com AOT não têm efeito.
+ *
+ * <p>O Caffeine instancia por nome a classe de cache e a de nó geradas para cada combinação de opções
+ * (ver {@code LocalCacheFactory} e {@code NodeFactory}). Os nomes abaixo correspondem aos builders de
+ * {@link Beans}: {@code responseCache} (estatísticas + tamanho máximo + expiração variável) e
+ * {@code jobCache} (peso máximo + expiração variável). Mudar esses builders exige rever a lista;
+ * {@code ProxyRuntimeHintsTest} falha se ela divergir das classes que os builders geram.
+ */
+public class ProxyRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final String[] CAFFEINE_CLASSES = {
+            "com.github.benmanes.caffeine.cache.SSSMSA",
+            "com.github.benmanes.caffeine.cache.PSWMS",
+            "com.github.benmanes.caffeine.cache.SSMWA",
+            "com.github.benmanes.caffeine.cache.PSWMW",
+    };
+
+    // aspecto do resilience4j que intercepta @TimeLimiter em UpstreamClient (retorno Mono)
+    private static final String[] RESILIENCE4J_CLASSES = {
+            "io.github.resilience4j.timelimiter.annotation.TimeLimiter",
+            "io.github.resilience4j.spring6.timelimiter.configure.TimeLimiterAspect",
+            "io.github.resilience4j.spring6.timelimiter.configure.ReactorTimeLimiterAspectExt",
+            "io.github.resilience4j.spring6.fallback.FallbackDecorators",
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        hints.reflection().registerType(ProxyConfig.class,
+                MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                MemberCategory.INVOKE_PUBLIC_METHODS,
+                MemberCategory.DECLARED_FIELDS);
+        for (String name : CAFFEINE_CLASSES) {
+            hints.reflection().registerType(TypeReference.of(name),
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.DECLARED_FIELDS);
+        }
+        for (String name : RESILIENCE4J_CLASSES) {
+            hints.reflection().registerType(TypeReference.of(name),
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+        // o fallbackMethod é localizado e chamado por reflexão, e é privado
+        hints.reflection().registerType(UpstreamClient.class,
+                MemberCategory.INVOKE_DECLARED_METHODS,
+                MemberCategory.INVOKE_PUBLIC_METHODS);
+    }
+}
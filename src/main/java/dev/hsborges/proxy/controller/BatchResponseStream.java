@@ -0,0 +1,93 @@
+package dev.hsborges.proxy.controller;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Escreve o resultado do lote como NDJSON, uma linha por consulta de entrada, na ordem em que os resultados
+ * ficam prontos. O corpo do score é copiado como está (já é JSON) dentro do campo {@code body}; as linhas
+ * de erro passam pelo gerador do Jackson, que escapa a mensagem. Fecha o stream quando todas as linhas
+ * foram escritas ou quando o cliente desconecta.
+ */
+final class BatchResponseStream {
+    private static final byte[] EMPTY_BODY = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final ResponseBodyEmitter emitter;
+    private final AtomicInteger pending;
+    private volatile boolean closed;
+
+    BatchResponseStream(ResponseBodyEmitter emitter, int lines) {
+        this.emitter = emitter;
+        this.pending = new AtomicInteger(lines);
+        emitter.onTimeout(() -> closed = true);
+        emitter.onError(t -> closed = true);
+        if (lines == 0) {
+            emitter.complete();
+        }
+    }
+
+    void body(List<Integer> indexes, String source, int status, byte[] body) {
+        for (int index : indexes) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(body.length + 64);
+            line.writeBytes(utf8("{\"index\":" + index + ",\"status\":" + status + ",\"source\":\"" + source + "\",\"body\":"));
+            line.writeBytes(body.length == 0 ? EMPTY_BODY : body);
+            line.writeBytes(utf8("}\n"));
+            send(line.toByteArray());
+        }
+    }
+
+    void error(List<Integer> indexes, int status, String error, long retryAfterMs) {
+        for (int index : indexes) {
+            send(errorLine(index, status, error, retryAfterMs));
+        }
+    }
+
+    static byte[] errorLine(int index, int status, String error, long retryAfterMs) {
+        ByteArrayBuilder out = new ByteArrayBuilder(96);
+        try (JsonGenerator gen = JSON.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeNumberField("index", index);
+            gen.writeNumberField("status", status);
+            gen.writeStringField("error", error);
+            if (retryAfterMs > 0 && retryAfterMs != Long.MAX_VALUE) {
+                gen.writeNumberField("retryAfterMs", retryAfterMs);
+            }
+            gen.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out.append('\n');
+        return out.toByteArray();
+    }
+
+    private synchronized void send(byte[] line) {
+        if (!closed) {
+            try {
+                emitter.send(line, MediaType.APPLICATION_NDJSON);
+            } catch (IOException | IllegalStateException e) {
+                // cliente desconectou; os itens restantes continuam na fila e alimentam o cache
+                closed = true;
+                emitter.completeWithError(e);
+            }
+        }
+        if (pending.decrementAndGet() == 0 && !closed) {
+            closed = true;
+            emitter.complete();
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
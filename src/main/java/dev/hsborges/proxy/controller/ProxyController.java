@@ -1,75 +1,388 @@
 package dev.hsborges.proxy.controller;
 
-import com.github.benmanes.caffeine.cache.Cache;
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreCache;
+import dev.hsborges.proxy.cache.ScoreKey;
 import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.job.JobStore;
+import dev.hsborges.proxy.job.ScoreJob;
+import dev.hsborges.proxy.metrics.ProxyMetrics;
 import dev.hsborges.proxy.queue.PrioritizedRequest;
-import dev.hsborges.proxy.queue.RequestQueue;
-import io.micrometer.core.instrument.MeterRegistry;
+import dev.hsborges.proxy.queue.RequestDroppedException;
+import dev.hsborges.proxy.scheduler.QueueWaitEstimator;
+import dev.hsborges.proxy.scheduler.UpstreamLanePool;
+import dev.hsborges.proxy.service.ScoreService;
+import dev.hsborges.proxy.service.Submission;
+import dev.hsborges.proxy.upstream.ForwardedHeaders;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
-import java.time.Instant;
+import java.net.URI;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/proxy")
 public class ProxyController {
 
-    private final RequestQueue queue;
-    private final Cache<String, String> cache;
+    private final ScoreService scoreService;
+    private final ScoreCache cache;
+    private final UpstreamLanePool lanes;
+    private final QueueWaitEstimator waitEstimator;
+    private final JobStore jobs;
+    private final ForwardedHeaders forwardedHeaders;
     private final ProxyConfig config;
-    private final MeterRegistry metrics;
+    private final ProxyMetrics metrics;
 
-    public ProxyController(RequestQueue queue, Cache<String, String> cache, ProxyConfig config, MeterRegistry metrics) {
-        this.queue = queue;
+    public ProxyController(ScoreService scoreService, ScoreCache cache, UpstreamLanePool lanes,
+                           QueueWaitEstimator waitEstimator, JobStore jobs, ForwardedHeaders forwardedHeaders,
+                           ProxyConfig config, ProxyMetrics metrics) {
+        this.scoreService = scoreService;
         this.cache = cache;
+        this.jobs = jobs;
+        this.forwardedHeaders = forwardedHeaders;
+        this.lanes = lanes;
+        this.waitEstimator = waitEstimator;
         this.config = config;
         this.metrics = metrics;
     }
 
+    /**
+     * Responde de forma assíncrona: o worker do servlet é liberado assim que a requisição entra na fila
+     * e a resposta é escrita quando o scheduler completa o future (ou quando o prazo expira).
+     * Requisições que não cabem no prazo pela espera estimada são recusadas na entrada com 503 e
+     * {@code Retry-After}. Entradas stale do cache são servidas enquanto uma revalidação passa pela fila.
+     * Toda resposta traz {@code Server-Timing} com fila, dispatch, upstream, transformação e total.
+     */
     @GetMapping("/score")
-    public ResponseEntity<?> getScore(@RequestParam Map<String, String> params,
-                                      @RequestHeader Map<String, String> headers) throws InterruptedException {
+    public CompletableFuture<ResponseEntity<?>> getScore(@RequestParam Map<String, String> params,
+                                                         @RequestHeader Map<String, String> headers) throws InterruptedException {
+        long start = System.nanoTime();
         String overrideClientId = headers.getOrDefault("x-client-id", params.getOrDefault("clientId", "")).trim();
         boolean hasOverride = !overrideClientId.isBlank();
-        
-        if (!hasOverride && (config.getClientId() == null || config.getClientId().isBlank())) {
-            return ResponseEntity.badRequest().body("CLIENT_ID ausente. Informe header x-client-id ou query clientId, ou configure proxy.client-id.");
+        PrioritizedRequest.Priority prio = priorityFromHeader(headers.getOrDefault("x-priority", "MEDIUM"));
+
+        if (!hasOverride && !lanes.hasPooledLanes()) {
+            return CompletableFuture.completedFuture(done(ResponseEntity.badRequest().body("CLIENT_ID ausente. Informe header x-client-id ou query clientId, ou configure proxy.client-id/proxy.client-ids."),
+                    prio, start, null));
         }
-        String cacheKey = buildCacheKey(params);
-        String cached = cache.getIfPresent(cacheKey);
+        ScoreKey cacheKey = ScoreKey.of(params, overrideClientId);
+        CachedScore cached = cache.get(cacheKey);
         if (cached != null) {
-            metrics.counter("proxy.cache.hit").increment();
-            return ResponseEntity.ok(cached);
+            if (cache.state(cached) == ScoreCache.State.STALE) {
+                scoreService.refresh(cacheKey, cached);
+            }
+            long elapsed = System.nanoTime() - start;
+            metrics.total(prio, ProxyMetrics.Outcome.HIT, elapsed);
+            return CompletableFuture.completedFuture(withTiming(json(cached.status(), cached.body()), ServerTiming.hit(elapsed)));
         }
-        metrics.counter("proxy.cache.miss").increment();
 
-        PrioritizedRequest.Priority prio = priorityFromHeader(headers.getOrDefault("x-priority", "MEDIUM"));
-        Instant ttl = Instant.now().plusMillis(config.getRequestTtlMs());
-        Map<String, String> safeHeaders = new HashMap<>(headers);
+        long deadlineMs = deadlineFromHeader(headers.get("x-deadline-ms"));
+        Submission submission = scoreService.submit(cacheKey, params, forwardedHeaders.select(headers), overrideClientId, prio, deadlineMs);
+        return switch (submission.status()) {
+            case ENQUEUED -> awaitResponse(submission.request(), deadlineMs, submission.request().getClientId())
+                    .thenApply(response -> done(response, prio, start, submission.request()));
+            case COALESCED -> awaitResponse(submission.request(), deadlineMs, submission.request().getClientId())
+                    .thenApply(response -> coalesced(response, prio, start));
+            case DEADLINE_EXCEEDED -> CompletableFuture.completedFuture(done(ResponseEntity.status(503)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(submission.retryAfterMs()))
+                    .body("Estimated queue wait " + submission.predictedWaitMs() + "ms exceeds deadline " + deadlineMs + "ms"),
+                    prio, start, null));
+            case QUEUE_FULL -> CompletableFuture.completedFuture(done(queueFull(submission.retryAfterMs()), prio, start, null));
+            case UNKNOWN_CLIENT -> CompletableFuture.completedFuture(done(unknownClient(overrideClientId), prio, start, null));
+        };
+    }
 
-        PrioritizedRequest req = new PrioritizedRequest("/score", params, safeHeaders, overrideClientId, prio, ttl);
-        boolean accepted = queue.offer(req, config.getQueueOfferTimeoutMs());
-        if (!accepted) {
-            metrics.counter("proxy.queue.drop", "reason", "full").increment();
-            return ResponseEntity.status(429).body("Queue full - request dropped");
+    /**
+     * Lote de consultas numa única conexão. Consultas repetidas no lote viram uma só chave; hits do cache
+     * saem na hora e as demais passam pelo mesmo caminho do {@code GET} (single-flight, admissão por prazo,
+     * fila), com prioridade padrão LOW e prazo {@code proxy.batch-ttl-ms}. Cada resultado é escrito como uma
+     * linha NDJSON ({@code index}, {@code status} e {@code body} ou {@code error}) assim que fica pronto.
+     * O tenant de cada item segue a mesma regra do {@code GET}: {@code x-client-id}, senão o campo
+     * {@code clientId} do item, senão o {@code clientId} da query do lote. Entradas novas na fila ficam
+     * limitadas a {@code proxy.batch-queue-share} das vagas livres; as excedentes voltam com 429.
+     */
+    @PostMapping(value = "/score/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> getScores(@RequestBody List<Map<String, String>> queries,
+                                                         @RequestParam(name = "clientId", defaultValue = "") String batchClientId,
+                                                         @RequestHeader Map<String, String> headers) throws InterruptedException {
+        long start = System.nanoTime();
+        String headerClientId = headers.getOrDefault("x-client-id", "").trim();
+        long deadlineMs = batchDeadlineFromHeader(headers.get("x-deadline-ms"));
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(deadlineMs + 5000);
+        if (queries.size() > config.getBatchMaxSize()) {
+            new BatchResponseStream(emitter, 1).error(List.of(-1), 413, "Lote maior que " + config.getBatchMaxSize(), 0);
+            return ResponseEntity.status(413).body(emitter);
         }
-        metrics.counter("proxy.queue.enqueued").increment();
-        try {
-            String body = req.getFuture().get(config.getRequestTtlMs(), java.util.concurrent.TimeUnit.MILLISECONDS);
-            return ResponseEntity.ok(body);
-        } catch (java.util.concurrent.TimeoutException te) {
-            metrics.counter("proxy.queue.drop", "reason", "timeout").increment();
+
+        Map<ScoreKey, List<Integer>> indexesByKey = new LinkedHashMap<>();
+        Map<ScoreKey, Map<String, String>> paramsByKey = new HashMap<>();
+        List<Integer> missingClientId = new ArrayList<>();
+        for (int i = 0; i < queries.size(); i++) {
+            Map<String, String> params = queries.get(i) == null ? Map.of() : queries.get(i);
+            String clientId = headerClientId.isBlank()
+                    ? params.getOrDefault("clientId", batchClientId).trim()
+                    : headerClientId;
+            if (clientId.isBlank() && !lanes.hasPooledLanes()) {
+                missingClientId.add(i);
+                continue;
+            }
+            ScoreKey key = ScoreKey.of(params, clientId);
+            indexesByKey.computeIfAbsent(key, k -> new ArrayList<>(1)).add(i);
+            paramsByKey.putIfAbsent(key, params);
+        }
+        metrics.batch(queries.size(), indexesByKey.size());
+
+        PrioritizedRequest.Priority prio = priorityFromHeader(headers.getOrDefault("x-priority", "LOW"));
+        Map<String, String> forwarded = forwardedHeaders.select(headers);
+        BatchResponseStream stream = new BatchResponseStream(emitter, queries.size());
+        int queueSlots = scoreService.batchSlots();
+        if (!missingClientId.isEmpty()) {
+            stream.error(missingClientId, 400, "CLIENT_ID ausente", 0);
+        }
+        for (Map.Entry<ScoreKey, List<Integer>> e : indexesByKey.entrySet()) {
+            ScoreKey key = e.getKey();
+            List<Integer> indexes = e.getValue();
+            CachedScore cached = cache.get(key);
+            if (cached != null) {
+                if (cache.state(cached) == ScoreCache.State.STALE) {
+                    scoreService.refresh(key, cached);
+                }
+                stream.body(indexes, "cache", cached.status(), cached.body());
+                metrics.total(prio, ProxyMetrics.Outcome.HIT, System.nanoTime() - start);
+                continue;
+            }
+            // a chave carrega o tenant do item
+            Submission submission = scoreService.trySubmit(key, paramsByKey.get(key), forwarded, key.tenant(), prio,
+                    deadlineMs, queueSlots > 0);
+            if (submission.status() == Submission.Status.ENQUEUED) {
+                queueSlots--;
+            }
+            switch (submission.status()) {
+                case ENQUEUED, COALESCED -> submission.request().getFuture()
+                        .copy() // o future é compartilhado com outros chamadores
+                        .orTimeout(deadlineMs, TimeUnit.MILLISECONDS)
+                        .whenComplete((body, t) -> {
+                            if (t == null) {
+                                stream.body(indexes, "upstream", submission.request().getResponseStatus(), body);
+                                metrics.total(prio, ProxyMetrics.Outcome.OK, System.nanoTime() - start);
+                            } else {
+                                ResponseEntity<?> failure = failureResponse(t, submission.request().getClientId());
+                                stream.error(indexes, failure.getStatusCode().value(), String.valueOf(failure.getBody()),
+                                        retryAfterMs(failure));
+                                metrics.total(prio, outcomeOf(failure), System.nanoTime() - start);
+                            }
+                        });
+                case DEADLINE_EXCEEDED -> {
+                    stream.error(indexes, 503, "Estimated queue wait exceeds deadline", submission.retryAfterMs());
+                    metrics.total(prio, ProxyMetrics.Outcome.REJECTED, System.nanoTime() - start);
+                }
+                case QUEUE_FULL -> {
+                    stream.error(indexes, 429, "Queue full - request dropped", submission.retryAfterMs());
+                    metrics.total(prio, ProxyMetrics.Outcome.REJECTED, System.nanoTime() - start);
+                }
+                case UNKNOWN_CLIENT -> {
+                    stream.error(indexes, 400, "CLIENT_ID nao configurado", 0);
+                    metrics.total(prio, ProxyMetrics.Outcome.REJECTED, System.nanoTime() - start);
+                }
+            }
+        }
+        // as linhas saem depois dos cabeçalhos; aqui só cabe o tempo de admissão do lote
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON)
+                .header(ServerTiming.HEADER, ServerTiming.stage("admission", System.nanoTime() - start))
+                .body(emitter);
+    }
+
+    /**
+     * Cria um job assíncrono e responde 202 na hora, com o ticket em {@code Location}. O job não tem prazo:
+     * espera no backlog da fila (capacidade {@code proxy.job-backlog-max-size}) até haver slot no upstream.
+     * Só é recusado (429) quando o backlog está cheio.
+     */
+    @PostMapping("/score/jobs")
+    public ResponseEntity<?> createJob(@RequestBody Map<String, String> params,
+                                       @RequestHeader Map<String, String> headers) {
+        long start = System.nanoTime();
+        String overrideClientId = headers.getOrDefault("x-client-id", params.getOrDefault("clientId", "")).trim();
+        if (overrideClientId.isBlank() && !lanes.hasPooledLanes()) {
+            return withTiming(ResponseEntity.badRequest().body("CLIENT_ID ausente. Informe header x-client-id ou campo clientId, ou configure proxy.client-id/proxy.client-ids."),
+                    ServerTiming.of(null, System.nanoTime() - start));
+        }
+        ScoreKey key = ScoreKey.of(params, overrideClientId);
+        CachedScore cached = cache.get(key);
+        if (cached != null && cached.negative()) {
+            // falha recente em cache: responde com o status dela em vez de criar um job "concluído"
+            return withTiming(json(cached.status(), cached.body()), ServerTiming.hit(System.nanoTime() - start));
+        }
+        if (cached != null) {
+            if (cache.state(cached) == ScoreCache.State.STALE) {
+                scoreService.refresh(key, cached);
+            }
+            return withTiming(ticket(jobs.completed(key, cached.status(), cached.body())), ServerTiming.hit(System.nanoTime() - start));
+        }
+        PrioritizedRequest.Priority prio = priorityFromHeader(headers.getOrDefault("x-priority", "LOW"));
+        Submission submission = scoreService.submitJob(key, params, forwardedHeaders.select(headers), overrideClientId, prio);
+        if (submission.status() == Submission.Status.UNKNOWN_CLIENT) {
+            return withTiming(unknownClient(overrideClientId), ServerTiming.of(null, System.nanoTime() - start));
+        }
+        if (!submission.isAccepted()) {
+            return withTiming(ResponseEntity.status(429)
+                    .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(submission.retryAfterMs()))
+                    .body("Job backlog full"), ServerTiming.of(null, System.nanoTime() - start));
+        }
+        return withTiming(ticket(jobs.track(submission.request())), ServerTiming.of(null, System.nanoTime() - start));
+    }
+
+    /**
+     * Long-poll do job: responde assim que o resultado chegar ou, passado {@code waitMs} (limitado a
+     * {@code proxy.job-poll-max-ms}), devolve 202 com o ticket para o cliente consultar de novo.
+     */
+    @GetMapping("/score/jobs/{id}")
+    public CompletableFuture<ResponseEntity<?>> getJob(@PathVariable String id,
+                                                       @RequestParam(defaultValue = "-1") long waitMs) {
+        long start = System.nanoTime();
+        ScoreJob job = jobs.get(id);
+        if (job == null) {
+            return CompletableFuture.completedFuture(withTiming(ResponseEntity.status(404).body("Job not found or expired"),
+                    ServerTiming.of(null, System.nanoTime() - start)));
+        }
+        long pollMs = waitMs < 0 ? config.getJobPollMaxMs() : Math.min(waitMs, config.getJobPollMaxMs());
+        return job.result()
+                .<ResponseEntity<?>>thenApply(result -> json(result.status(), result.body()))
+                .completeOnTimeout(ticket(job), pollMs, TimeUnit.MILLISECONDS)
+                .exceptionally(t -> ResponseEntity.status(502).contentType(MediaType.APPLICATION_JSON)
+                        .body("{\"id\":\"" + job.id() + "\",\"status\":\"FAILED\"}"))
+                .thenApply(response -> withTiming(response, ServerTiming.stage("poll", System.nanoTime() - start)));
+    }
+
+    private static ResponseEntity<?> ticket(ScoreJob job) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/proxy/score/jobs/" + job.id()))
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body("{\"id\":\"" + job.id() + "\",\"status\":\"" + (job.isDone() ? "DONE" : "PENDING") + "\"}");
+    }
+
+    private CompletableFuture<ResponseEntity<?>> awaitResponse(PrioritizedRequest req, long deadlineMs, String clientId) {
+        return req.getFuture()
+                .<ResponseEntity<?>>thenApply(body -> json(req.getResponseStatus(), body))
+                .orTimeout(deadlineMs, TimeUnit.MILLISECONDS)
+                .exceptionally(t -> failureResponse(t, clientId));
+    }
+
+    private ResponseEntity<?> failureResponse(Throwable t, String clientId) {
+        Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        if (cause instanceof TimeoutException) {
+            metrics.drop(ProxyMetrics.DropReason.TIMEOUT);
             return ResponseEntity.status(504).body("Timeout waiting upstream");
-        } catch (Exception e) {
-            return ResponseEntity.status(502).body("Upstream error");
+        }
+        if (cause instanceof RequestDroppedException dropped) {
+            return "full".equals(dropped.getReason())
+                    ? queueFull(waitEstimator.slotIntervalMs(clientId))
+                    : ResponseEntity.status(504).body("Request expired in queue");
+        }
+        return ResponseEntity.status(502).body("Upstream error");
+    }
+
+    /** Registra o tempo de ponta a ponta e anexa o {@code Server-Timing} com as etapas da requisição. */
+    private ResponseEntity<?> done(ResponseEntity<?> response, PrioritizedRequest.Priority prio, long startNanos,
+                                   PrioritizedRequest req) {
+        long elapsed = System.nanoTime() - startNanos;
+        metrics.total(prio, outcomeOf(response), elapsed);
+        return withTiming(response, ServerTiming.of(req, elapsed));
+    }
+
+    /** Seguidor do single-flight: fila e dispatch foram do líder, então o {@code Server-Timing} só traz o total. */
+    private ResponseEntity<?> coalesced(ResponseEntity<?> response, PrioritizedRequest.Priority prio, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        metrics.total(prio, outcomeOf(response), elapsed);
+        return withTiming(response, ServerTiming.coalesced(elapsed));
+    }
+
+    private static ResponseEntity<?> withTiming(ResponseEntity<?> response, String timing) {
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(ServerTiming.HEADER, timing)
+                .body(response.getBody());
+    }
+
+    private static ProxyMetrics.Outcome outcomeOf(ResponseEntity<?> response) {
+        int status = response.getStatusCode().value();
+        if (status < 300) {
+            return ProxyMetrics.Outcome.OK;
+        }
+        if (status == 504) {
+            return ProxyMetrics.Outcome.TIMEOUT;
+        }
+        return status == 400 || status == 429 || status == 503 ? ProxyMetrics.Outcome.REJECTED : ProxyMetrics.Outcome.ERROR;
+    }
+
+    /**
+     * Corpo já serializado pelo transformador, escrito como está, sem conversão para {@code String}. Erros e
+     * fallbacks, ao vivo, do cache negativo ou de um job, saem com o status original do upstream.
+     */
+    private static ResponseEntity<byte[]> json(int status, byte[] body) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private static ResponseEntity<?> unknownClient(String clientId) {
+        return ResponseEntity.badRequest().body("CLIENT_ID " + clientId + " recusado: limite de credenciais fora do pool"
+                + " (proxy.adhoc-client-ids-max) atingido. Use uma credencial de proxy.client-ids.");
+    }
+
+    private static ResponseEntity<?> queueFull(long retryAfterMs) {
+        return ResponseEntity.status(429)
+                .header(HttpHeaders.RETRY_AFTER, retryAfterSeconds(retryAfterMs))
+                .body("Queue full - request dropped");
+    }
+
+    private static String retryAfterSeconds(long ms) {
+        if (ms == Long.MAX_VALUE) {
+            return "60";
+        }
+        return Long.toString(Math.max(1, (ms + 999) / 1000));
+    }
+
+    private static long retryAfterMs(ResponseEntity<?> response) {
+        String value = response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        return value == null ? 0 : Long.parseLong(value) * 1000;
+    }
+
+    /** No lote, {@code x-deadline-ms} vale por item e é limitado a {@code proxy.batch-ttl-ms}. */
+    private long batchDeadlineFromHeader(String value) {
+        try {
+            return value == null || value.isBlank() ? config.getBatchTtlMs()
+                    : Math.max(1, Math.min(Long.parseLong(value.trim()), config.getBatchTtlMs()));
+        } catch (NumberFormatException e) {
+            return config.getBatchTtlMs();
+        }
+    }
+
+    /** Prazo informado pelo chamador em {@code x-deadline-ms}, limitado a {@code proxy.request-max-ttl-ms}. */
+    private long deadlineFromHeader(String value) {
+        if (value == null || value.isBlank()) {
+            return config.getRequestTtlMs();
+        }
+        try {
+            return Math.max(1, Math.min(Long.parseLong(value.trim()), config.getRequestMaxTtlMs()));
+        } catch (NumberFormatException e) {
+            return config.getRequestTtlMs();
         }
     }
 
@@ -80,14 +393,4 @@ public class ProxyController {
             return PrioritizedRequest.Priority.MEDIUM;
         }
     }
-
-    private static String buildCacheKey(Map<String, String> params) {
-        return params.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .map(e -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "=" + URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
-                .reduce((a, b) -> a + "&" + b)
-                .orElse("");
-    }
 }
-
-
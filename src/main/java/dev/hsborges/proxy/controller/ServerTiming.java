@@ -0,0 +1,62 @@
+package dev.hsborges.proxy.controller;
+
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+
+/**
+ * Valor do cabeçalho {@code Server-Timing} montado a partir das marcas de etapa da requisição, com as
+ * durações em milissegundos. Permite ao cliente separar tempo de fila de lentidão do upstream.
+ */
+final class ServerTiming {
+
+    static final String HEADER = "Server-Timing";
+
+    private ServerTiming() {
+    }
+
+    /** Requisição que passou pela fila; sem {@code req} só o total é informado. */
+    static String of(PrioritizedRequest req, long totalNanos) {
+        StringBuilder sb = new StringBuilder(112);
+        if (req != null) {
+            append(sb, "queue", req.queueWaitNanos());
+            if (req.upstreamNanos() > 0) {
+                append(sb, "dispatch", req.dispatchDelayNanos());
+                append(sb, "upstream", req.upstreamNanos());
+                append(sb, "transform", req.transformNanos());
+            }
+        }
+        append(sb, "total", totalNanos);
+        return sb.toString();
+    }
+
+    static String hit(long totalNanos) {
+        StringBuilder sb = new StringBuilder(40).append("cache;desc=hit");
+        append(sb, "total", totalNanos);
+        return sb.toString();
+    }
+
+    /** Chamador anexado à requisição de outro: as etapas dela não são dele. */
+    static String coalesced(long totalNanos) {
+        StringBuilder sb = new StringBuilder(48).append("inflight;desc=coalesced");
+        append(sb, "total", totalNanos);
+        return sb.toString();
+    }
+
+    static String stage(String name, long nanos) {
+        StringBuilder sb = new StringBuilder(32);
+        append(sb, name, nanos);
+        return sb.toString();
+    }
+
+    // formata com três casas decimais sem String.format
+    private static void append(StringBuilder sb, String name, long nanos) {
+        if (!sb.isEmpty()) {
+            sb.append(", ");
+        }
+        long micros = Math.max(0, nanos) / 1000;
+        long frac = micros % 1000;
+        sb.append(name).append(";dur=").append(micros / 1000).append('.');
+        if (frac < 100) sb.append('0');
+        if (frac < 10) sb.append('0');
+        sb.append(frac);
+    }
+}
@@ -0,0 +1,98 @@
+package dev.hsborges.proxy.job;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.persistence.ScoreJournal;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Jobs indexados pelo id da requisição. Jobs pendentes não contam para o limite nem expiram (o backlog da
+ * fila já limita quantos existem); ao concluir, o job é regravado e passa a ocupar uma vaga de resultado,
+ * expirando {@code job-result-ttl-ms} depois. Aceites e conclusões vão para o journal, com o status do
+ * upstream; só a falha sem resposta (exceção) não é gravada.
+ */
+@Component
+public class JobStore {
+
+    private final Cache<String, ScoreJob> jobs;
+    private final ScoreJournal journal;
+    private final Counter created;
+    private final Counter completed;
+
+    public JobStore(Cache<String, ScoreJob> jobCache, ScoreJournal journal, MeterRegistry registry) {
+        this.jobs = jobCache;
+        this.journal = journal;
+        this.created = registry.counter("proxy.jobs.created");
+        this.completed = registry.counter("proxy.jobs.completed");
+        registry.gauge("proxy.jobs.stored", jobCache, c -> c.estimatedSize());
+    }
+
+    /** Ticket para uma requisição enfileirada (ou em andamento); reaproveita o ticket se já existir. */
+    public ScoreJob track(PrioritizedRequest req) {
+        return track(req.getId(), req);
+    }
+
+    /** Como {@link #track(PrioritizedRequest)}, mantendo um id já entregue ao cliente (restauração). */
+    public ScoreJob track(String id, PrioritizedRequest req) {
+        ScoreJob job = jobs.asMap().computeIfAbsent(id, k -> {
+            created.increment();
+            // o scheduler grava o status na requisição antes de completar o future
+            CompletableFuture<ScoreJob.Result> result = req.getFuture()
+                    .thenApply(body -> new ScoreJob.Result(req.getResponseStatus(), body));
+            ScoreJob pending = new ScoreJob(k, req.getKey(), System.currentTimeMillis(), result, 0,
+                    req.getQueryParams(), req.getClientId());
+            journal.jobAccepted(pending);
+            return pending;
+        });
+        if (!job.isDone()) {
+            job.result().whenComplete((result, err) -> markCompleted(job, result));
+        }
+        return job;
+    }
+
+    /** Ticket já concluído, para consultas respondidas pelo cache, com o status da entrada. */
+    public ScoreJob completed(ScoreKey key, int status, byte[] body) {
+        long now = System.currentTimeMillis();
+        ScoreJob.Result result = new ScoreJob.Result(status, body);
+        ScoreJob job = new ScoreJob(UUID.randomUUID().toString(), key, now, CompletableFuture.completedFuture(result),
+                now, Map.of(), null);
+        jobs.put(job.id(), job);
+        journal.jobDone(job, result);
+        created.increment();
+        completed.increment();
+        return job;
+    }
+
+    /** Recoloca um job concluído lido do journal, com os instantes originais; não regrava no journal. */
+    public void restore(ScoreJob job) {
+        jobs.asMap().putIfAbsent(job.id(), job);
+    }
+
+    public ScoreJob get(String id) {
+        return jobs.getIfPresent(id);
+    }
+
+    /** Visão dos jobs vivos, para a compactação do journal. */
+    public Collection<ScoreJob> all() {
+        return jobs.asMap().values();
+    }
+
+    // nova instância para o Caffeine recalcular peso e expiração
+    private void markCompleted(ScoreJob pending, ScoreJob.Result result) {
+        ScoreJob done = pending.completed(System.currentTimeMillis());
+        if (jobs.asMap().replace(pending.id(), pending, done)) {
+            completed.increment();
+            if (result != null) {
+                journal.jobDone(done, result);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package dev.hsborges.proxy.job;
+
+import dev.hsborges.proxy.cache.ScoreKey;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Ticket de um job assíncrono. O id é o da {@code PrioritizedRequest} que o atende, então jobs coalescidos
+ * na mesma chamada compartilham o ticket; quando o cache já tinha a resposta o job nasce concluído.
+ *
+ * @param result            corpo e status do upstream; erros do upstream (4xx/5xx, fallback) também concluem
+ *                          o job normalmente, só que com o status original
+ * @param completedAtMillis 0 enquanto o resultado não chegou; a expiração do ticket conta a partir daqui
+ * @param queryParams       consulta original, para reenfileirar o job ao restaurar o journal
+ */
+public record ScoreJob(String id,
+                       ScoreKey key,
+                       long createdAtMillis,
+                       CompletableFuture<Result> result,
+                       long completedAtMillis,
+                       Map<String, String> queryParams,
+                       String clientId) {
+
+    public boolean isDone() {
+        return completedAtMillis > 0;
+    }
+
+    ScoreJob completed(long nowMillis) {
+        return new ScoreJob(id, key, createdAtMillis, result, nowMillis, queryParams, clientId);
+    }
+
+    /** Resposta do job como o upstream a deu: status HTTP e corpo já transformado. */
+    public record Result(int status, byte[] body) {
+    }
+}
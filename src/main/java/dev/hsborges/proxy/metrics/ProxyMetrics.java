@@ -0,0 +1,115 @@
+package dev.hsborges.proxy.metrics;
+
+import dev.hsborges.proxy.queue.PrioritizedRequest.Priority;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Medidores do caminho de cada requisição, registrados uma única vez e guardados em arrays indexados por
+ * prioridade e resultado: nada de busca por nome e tags no registry a cada requisição. Os tempos chegam
+ * em nanossegundos, medidos com {@link System#nanoTime()}.
+ */
+@Component
+public class ProxyMetrics {
+
+    /** Como a requisição terminou, do ponto de vista do cliente. */
+    public enum Outcome {
+        HIT, OK, REJECTED, TIMEOUT, ERROR;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    public enum DropReason {
+        FULL, TTL, TIMEOUT, DEADLINE, BACKLOG;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+    private static final DropReason[] DROP_REASONS = DropReason.values();
+
+    private final Timer[] queueWait = new Timer[PRIORITIES.length];
+    private final Timer[] dispatchDelay = new Timer[PRIORITIES.length];
+    // [prioridade][0 = sucesso, 1 = erro]
+    private final Timer[][] upstream = new Timer[PRIORITIES.length][2];
+    private final Timer[][] total = new Timer[PRIORITIES.length][OUTCOMES.length];
+    private final Timer transform;
+
+    private final Counter[] drops = new Counter[DROP_REASONS.length];
+    private final Counter[] coalesced = new Counter[PRIORITIES.length];
+    private final Counter enqueued;
+    private final Counter promoted;
+    private final Counter jobsEnqueued;
+    private final Counter skippedCached;
+    private final Counter prefetchDispatched;
+    private final Counter upstreamSuccess;
+    private final Counter upstreamErrors;
+    private final Counter batchItems;
+    private final Counter batchDeduplicated;
+
+    public ProxyMetrics(MeterRegistry registry) {
+        for (Priority p : PRIORITIES) {
+            int i = p.ordinal();
+            queueWait[i] = timer("proxy.queue.wait", registry, "priority", p.name());
+            dispatchDelay[i] = timer("proxy.scheduler.dispatch.delay", registry, "priority", p.name());
+            upstream[i][0] = timer("proxy.upstream.latency", registry, "priority", p.name(), "outcome", "success");
+            upstream[i][1] = timer("proxy.upstream.latency", registry, "priority", p.name(), "outcome", "error");
+            for (Outcome o : OUTCOMES) {
+                total[i][o.ordinal()] = timer("proxy.request.latency", registry, "priority", p.name(), "outcome", o.tag);
+            }
+            coalesced[i] = registry.counter("proxy.inflight.coalesced", "priority", p.name());
+        }
+        transform = timer("proxy.upstream.transform", registry);
+        for (DropReason r : DROP_REASONS) {
+            drops[r.ordinal()] = registry.counter("proxy.queue.drop", "reason", r.tag);
+        }
+        enqueued = registry.counter("proxy.queue.enqueued");
+        promoted = registry.counter("proxy.inflight.promoted");
+        jobsEnqueued = registry.counter("proxy.jobs.enqueued");
+        skippedCached = registry.counter("proxy.scheduler.skipped", "reason", "cached");
+        prefetchDispatched = registry.counter("proxy.prefetch.dispatched");
+        upstreamSuccess = registry.counter("proxy.upstream.success");
+        upstreamErrors = registry.counter("proxy.upstream.errors");
+        batchItems = registry.counter("proxy.batch.items");
+        batchDeduplicated = registry.counter("proxy.batch.deduplicated");
+    }
+
+    // só o histograma: agregável entre réplicas no backend, ao contrário de percentis calculados no nó
+    private static Timer timer(String name, MeterRegistry registry, String... tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    public void queueWait(Priority prio, long nanos) { queueWait[prio.ordinal()].record(nanos, TimeUnit.NANOSECONDS); }
+    public void dispatchDelay(Priority prio, long nanos) { dispatchDelay[prio.ordinal()].record(nanos, TimeUnit.NANOSECONDS); }
+    public void transform(long nanos) { transform.record(nanos, TimeUnit.NANOSECONDS); }
+    public void total(Priority prio, Outcome outcome, long nanos) {
+        total[prio.ordinal()][outcome.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void upstream(Priority prio, boolean failed, long nanos) {
+        upstream[prio.ordinal()][failed ? 1 : 0].record(nanos, TimeUnit.NANOSECONDS);
+        (failed ? upstreamErrors : upstreamSuccess).increment();
+    }
+
+    public void drop(DropReason reason) { drops[reason.ordinal()].increment(); }
+    public void coalesced(Priority prio) { coalesced[prio.ordinal()].increment(); }
+    public void enqueued() { enqueued.increment(); }
+    public void promoted() { promoted.increment(); }
+    public void jobEnqueued() { jobsEnqueued.increment(); }
+    public void skippedCached() { skippedCached.increment(); }
+    public void prefetchDispatched() { prefetchDispatched.increment(); }
+
+    public void batch(int items, int unique) {
+        batchItems.increment(items);
+        batchDeduplicated.increment(items - unique);
+    }
+}
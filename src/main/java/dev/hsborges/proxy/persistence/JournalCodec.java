@@ -0,0 +1,183 @@
+package dev.hsborges.proxy.persistence;
+
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.job.ScoreJob;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Formato binário dos registros (big-endian). Cada registro começa pelo tipo; strings e corpos são
+ * prefixados pelo tamanho, com -1 para {@code null}. A chave é gravada na forma canônica de
+ * {@link ScoreKey}, então a restauração não precisa renormalizar a consulta.
+ */
+final class JournalCodec {
+    static final byte CACHE_ENTRY = 1;
+    static final byte JOB_ACCEPTED = 2;
+    static final byte JOB_DONE = 3;
+
+    private static final int NEGATIVE = 1;
+    private static final int PREFETCHED = 2;
+    // status gravado logo após as flags; registros antigos não têm e valem 200, ou 502 se negativos
+    private static final int STATUS = 4;
+
+    private JournalCodec() {
+    }
+
+    static void cacheEntry(Encoder out, ScoreKey key, CachedScore entry) {
+        out.putByte(CACHE_ENTRY);
+        out.putLong(entry.writtenAtMillis());
+        out.putByte((entry.negative() ? NEGATIVE : 0) | (entry.prefetched() ? PREFETCHED : 0) | STATUS);
+        out.putInt(entry.status());
+        out.putString(key.tenant());
+        out.putString(key.query());
+        out.putString(entry.clientId());
+        out.putParams(entry.queryParams());
+        out.putBytes(entry.body());
+    }
+
+    static void jobAccepted(Encoder out, ScoreJob job) {
+        out.putByte(JOB_ACCEPTED);
+        out.putString(job.id());
+        out.putString(job.key().tenant());
+        out.putString(job.key().query());
+        out.putLong(job.createdAtMillis());
+        out.putString(job.clientId());
+        out.putParams(job.queryParams());
+    }
+
+    // o status vem depois do corpo: registros antigos terminam no corpo e valem 200
+    static void jobDone(Encoder out, ScoreJob job, ScoreJob.Result result) {
+        out.putByte(JOB_DONE);
+        out.putString(job.id());
+        out.putString(job.key().tenant());
+        out.putString(job.key().query());
+        out.putLong(job.createdAtMillis());
+        out.putLong(job.completedAtMillis());
+        out.putBytes(result.body());
+        out.putInt(result.status());
+    }
+
+    /** Decodifica um registro já validado pelo CRC. Tipos desconhecidos são ignorados. */
+    static void decode(ByteBuffer in, JournalSink sink) {
+        switch (in.get()) {
+            case CACHE_ENTRY -> {
+                long writtenAt = in.getLong();
+                int flags = in.get();
+                int status = (flags & STATUS) != 0 ? in.getInt() : (flags & NEGATIVE) != 0 ? 502 : 200;
+                ScoreKey key = ScoreKey.ofCanonical(getString(in), getString(in));
+                String clientId = getString(in);
+                Map<String, String> params = getParams(in);
+                byte[] body = getBytes(in);
+                sink.cacheEntry(key, new CachedScore(body, status, writtenAt, (flags & PREFETCHED) != 0,
+                        params, clientId));
+            }
+            case JOB_ACCEPTED -> {
+                String id = getString(in);
+                ScoreKey key = ScoreKey.ofCanonical(getString(in), getString(in));
+                long createdAt = in.getLong();
+                String clientId = getString(in);
+                sink.jobAccepted(new ScoreJob(id, key, createdAt, null, 0, getParams(in), clientId));
+            }
+            case JOB_DONE -> {
+                String id = getString(in);
+                ScoreKey key = ScoreKey.ofCanonical(getString(in), getString(in));
+                long createdAt = in.getLong();
+                long completedAt = in.getLong();
+                byte[] body = getBytes(in);
+                ScoreJob.Result result = new ScoreJob.Result(in.remaining() >= 4 ? in.getInt() : 200, body);
+                sink.jobDone(new ScoreJob(id, key, createdAt, CompletableFuture.completedFuture(result), completedAt,
+                        Map.of(), null), result);
+            }
+            default -> { }
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer in) {
+        int len = in.getInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.get(bytes);
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = getBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> getParams(ByteBuffer in) {
+        int count = in.getInt();
+        Map<String, String> params = new LinkedHashMap<>(Math.max(4, count * 2));
+        for (int i = 0; i < count; i++) {
+            params.put(getString(in), getString(in));
+        }
+        return params;
+    }
+
+    /** Buffer de codificação reaproveitado entre registros; não é thread-safe. */
+    static final class Encoder {
+        byte[] buf = new byte[1024];
+        int pos;
+
+        void reset() { pos = 0; }
+
+        void putByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        void putLong(long v) {
+            putInt((int) (v >>> 32));
+            putInt((int) v);
+        }
+
+        void putBytes(byte[] bytes) {
+            if (bytes == null) {
+                putInt(-1);
+                return;
+            }
+            putInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void putString(String s) {
+            putBytes(s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void putParams(Map<String, String> params) {
+            if (params == null) {
+                putInt(0);
+                return;
+            }
+            putInt(params.size());
+            params.forEach((k, v) -> {
+                putString(k);
+                putString(v);
+            });
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package dev.hsborges.proxy.persistence;
+
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreCache;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.job.JobStore;
+import dev.hsborges.proxy.job.ScoreJob;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.service.ScoreService;
+import dev.hsborges.proxy.service.Submission;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Restaura cache e jobs do journal antes do servidor aceitar tráfego e, em segundo plano, força as
+ * páginas para o disco e compacta periodicamente. Jobs que estavam pendentes voltam para o backlog
+ * com o mesmo id de ticket.
+ */
+@Component
+public class JournalMaintenance {
+    private static final Logger log = LoggerFactory.getLogger(JournalMaintenance.class);
+
+    private final ScoreJournal journal;
+    private final ScoreCache cache;
+    private final JobStore jobs;
+    private final ScoreService scoreService;
+    private final ProxyConfig config;
+    private ScheduledExecutorService executor;
+
+    public JournalMaintenance(ScoreJournal journal, ScoreCache cache, JobStore jobs, ScoreService scoreService,
+                              ProxyConfig config) {
+        this.journal = journal;
+        this.cache = cache;
+        this.jobs = jobs;
+        this.scoreService = scoreService;
+        this.config = config;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!journal.isEnabled()) {
+            return;
+        }
+        restore();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        long flushMs = config.getJournalFlushIntervalMs();
+        long compactMs = config.getJournalCompactIntervalMs();
+        executor.scheduleWithFixedDelay(journal::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+        executor.scheduleWithFixedDelay(this::compact, compactMs, compactMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    void restore() throws IOException {
+        long started = System.nanoTime();
+        Map<ScoreKey, CachedScore> entries = new HashMap<>();
+        Map<String, ScoreJob> pending = new LinkedHashMap<>();
+        Map<String, ScoreJob> done = new HashMap<>();
+        journal.replay(new JournalSink() {
+            @Override
+            public void cacheEntry(ScoreKey key, CachedScore entry) {
+                entries.merge(key, entry, (a, b) -> b.writtenAtMillis() >= a.writtenAtMillis() ? b : a);
+            }
+
+            @Override
+            public void jobAccepted(ScoreJob job) {
+                pending.putIfAbsent(job.id(), job);
+            }
+
+            @Override
+            public void jobDone(ScoreJob job, ScoreJob.Result result) {
+                done.put(job.id(), job);
+            }
+        });
+
+        long now = System.currentTimeMillis();
+        long positiveLifeMs = config.getCacheTtlMs() + config.getCacheStaleGraceMs();
+        entries.values().removeIf(e -> e.writtenAtMillis() + (e.negative() ? config.getCacheNegativeTtlMs() : positiveLifeMs) <= now);
+        cache.restore(entries);
+
+        pending.keySet().removeAll(done.keySet());
+        done.values().removeIf(j -> j.completedAtMillis() + config.getJobResultTtlMs() <= now);
+        done.values().forEach(jobs::restore);
+        int requeued = 0;
+        for (ScoreJob job : pending.values()) {
+            if (resubmit(job)) {
+                requeued++;
+            }
+        }
+        log.info("Journal restaurado em {} ms: {} entradas de cache, {} jobs concluidos, {} jobs reenfileirados",
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), entries.size(), done.size(), requeued);
+    }
+
+    private boolean resubmit(ScoreJob job) {
+        Submission submission = scoreService.submitJob(job.key(), job.queryParams(), Map.of(), job.clientId(),
+                PrioritizedRequest.Priority.LOW);
+        if (!submission.isAccepted()) {
+            log.warn("Job {} descartado ao restaurar: {}", job.id(), submission.status());
+            return false;
+        }
+        jobs.track(job.id(), submission.request());
+        return true;
+    }
+
+    private void compact() {
+        try {
+            long started = System.nanoTime();
+            journal.compact(sink -> {
+                cache.asMap().forEach(sink::cacheEntry);
+                for (ScoreJob job : jobs.all()) {
+                    if (!job.isDone()) {
+                        sink.jobAccepted(job);
+                    } else if (!job.result().isCompletedExceptionally()) {
+                        sink.jobDone(job, job.result().join());
+                    }
+                }
+            });
+            log.debug("Journal compactado em {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Falha ao compactar o journal: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package dev.hsborges.proxy.persistence;
+
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.job.ScoreJob;
+
+/** Registros do journal: quem escreve (journal, snapshot) e quem lê na restauração usam a mesma interface. */
+public interface JournalSink {
+
+    void cacheEntry(ScoreKey key, CachedScore entry);
+
+    /** Job aceito e ainda pendente. Na leitura, {@code result} vem {@code null}. */
+    void jobAccepted(ScoreJob job);
+
+    void jobDone(ScoreJob job, ScoreJob.Result result);
+}
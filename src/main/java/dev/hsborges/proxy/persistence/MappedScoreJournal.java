@@ -0,0 +1,323 @@
+package dev.hsborges.proxy.persistence;
+
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.job.ScoreJob;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal em arquivos mapeados em memória ({@code segment-N.log}), cada um com tamanho fixo. Um registro é
+ * {@code [tamanho][payload][crc32c]}; o tamanho é escrito por último, então um registro interrompido por
+ * crash fica com tamanho 0 e a leitura do segmento para ali. Depois de um restart a escrita continua num
+ * segmento novo.
+ *
+ * <p>A compactação fecha o segmento atual, grava o estado vivo em {@code snapshot-N-P.log} e, com o
+ * marcador {@code snapshot-N.done} no disco, apaga os segmentos anteriores a N. A restauração lê o último
+ * snapshot completo e os segmentos a partir dele; registros repetidos são resolvidos por quem lê (vence a
+ * escrita mais recente).
+ *
+ * <p>Nenhum {@code force()} acontece no caminho de escrita: ao encher, o segmento é só trocado, e a
+ * thread de manutenção força os segmentos fechados e o ativo em {@link #flush()}, fora do monitor.
+ */
+public final class MappedScoreJournal implements ScoreJournal {
+    private static final Logger log = LoggerFactory.getLogger(MappedScoreJournal.class);
+    private static final String SEGMENT = "segment-";
+    private static final String SNAPSHOT = "snapshot-";
+    private static final String LOG = ".log";
+    private static final String DONE = ".done";
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final MappedWriter segments;
+    private final Object compactLock = new Object();
+
+    private MappedScoreJournal(Path dir, int segmentBytes, long firstSeq) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.segments = new MappedWriter(seq -> dir.resolve(SEGMENT + pad(seq) + LOG), segmentBytes, firstSeq);
+    }
+
+    public static MappedScoreJournal open(Path dir, int segmentBytes) throws IOException {
+        Files.createDirectories(dir);
+        long lastSeq = 0;
+        for (Path p : list(dir)) {
+            String name = p.getFileName().toString();
+            if (name.startsWith(SNAPSHOT) && name.endsWith(LOG) && !Files.exists(markerOf(dir, boundaryOf(name)))) {
+                // compactação interrompida antes do marcador
+                Files.deleteIfExists(p);
+                continue;
+            }
+            lastSeq = Math.max(lastSeq, boundaryOf(name));
+        }
+        MappedScoreJournal journal = new MappedScoreJournal(dir, segmentBytes, lastSeq + 1);
+        journal.segments.roll();
+        return journal;
+    }
+
+    @Override
+    public synchronized void cacheEntry(ScoreKey key, CachedScore entry) {
+        try {
+            segments.cacheEntry(key, entry);
+        } catch (UncheckedIOException e) {
+            log.warn("Falha ao gravar entrada de cache no journal: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void jobAccepted(ScoreJob job) {
+        try {
+            segments.jobAccepted(job);
+        } catch (UncheckedIOException e) {
+            log.warn("Falha ao gravar job {} no journal: {}", job.id(), e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void jobDone(ScoreJob job, ScoreJob.Result result) {
+        try {
+            segments.jobDone(job, result);
+        } catch (UncheckedIOException e) {
+            log.warn("Falha ao gravar conclusão do job {} no journal: {}", job.id(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void replay(JournalSink visitor) throws IOException {
+        long snapshot = latestSnapshot();
+        long active;
+        synchronized (this) {
+            active = segments.current();
+        }
+        List<Path> files = new ArrayList<>();
+        for (Path p : list(dir)) {
+            String name = p.getFileName().toString();
+            if (!name.endsWith(LOG)) {
+                continue;
+            }
+            long boundary = boundaryOf(name);
+            boolean snapshotPart = name.startsWith(SNAPSHOT) && boundary == snapshot;
+            boolean segment = name.startsWith(SEGMENT) && boundary >= snapshot && boundary != active;
+            if (snapshotPart || segment) {
+                files.add(p);
+            }
+        }
+        // snapshot primeiro, depois os segmentos em ordem
+        files.sort((a, b) -> {
+            boolean sa = a.getFileName().toString().startsWith(SNAPSHOT);
+            boolean sb = b.getFileName().toString().startsWith(SNAPSHOT);
+            return sa != sb ? (sa ? -1 : 1) : a.compareTo(b);
+        });
+        CRC32C crc = new CRC32C();
+        for (Path p : files) {
+            replayFile(p, visitor, crc);
+        }
+    }
+
+    private static void replayFile(Path path, JournalSink visitor, CRC32C crc) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (ch.size() == 0) {
+                return;
+            }
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        while (buf.remaining() >= 8) {
+            int start = buf.position();
+            int len = buf.getInt();
+            if (len <= 0 || len > buf.remaining() - 4) {
+                break;
+            }
+            ByteBuffer payload = buf.slice(start + 4, len);
+            crc.reset();
+            crc.update(payload.duplicate());
+            buf.position(start + 4 + len);
+            if (buf.getInt() != (int) crc.getValue()) {
+                log.warn("Registro corrompido em {} (offset {}); restante do arquivo ignorado", path.getFileName(), start);
+                break;
+            }
+            JournalCodec.decode(payload, visitor);
+        }
+    }
+
+    @Override
+    public void compact(Consumer<JournalSink> snapshot) throws IOException {
+        synchronized (compactLock) {
+            long boundary;
+            synchronized (this) {
+                try {
+                    segments.roll();
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                boundary = segments.current();
+            }
+            MappedWriter writer = new MappedWriter(part -> dir.resolve(SNAPSHOT + pad(boundary) + "-" + pad(part) + LOG),
+                    segmentBytes, 0);
+            try {
+                snapshot.accept(writer);
+                writer.force();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.createFile(markerOf(dir, boundary));
+            for (Path p : list(dir)) {
+                String name = p.getFileName().toString();
+                if (boundaryOf(name) < boundary) {
+                    Files.deleteIfExists(p);
+                }
+            }
+        }
+    }
+
+    // sem o monitor: o force() de um segmento grande não segura quem está gravando
+    @Override
+    public void flush() {
+        segments.force();
+    }
+
+    @Override
+    public void close() {
+        segments.force();
+    }
+
+    private long latestSnapshot() throws IOException {
+        long latest = -1;
+        for (Path p : list(dir)) {
+            String name = p.getFileName().toString();
+            if (name.startsWith(SNAPSHOT) && name.endsWith(DONE)) {
+                latest = Math.max(latest, boundaryOf(name));
+            }
+        }
+        return latest;
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(SEGMENT) || name.startsWith(SNAPSHOT);
+            }).sorted().toList();
+        }
+    }
+
+    private static Path markerOf(Path dir, long boundary) {
+        return dir.resolve(SNAPSHOT + pad(boundary) + DONE);
+    }
+
+    // segment-<seq>.log, snapshot-<seq>-<parte>.log e snapshot-<seq>.done: o número depois do prefixo
+    private static long boundaryOf(String name) {
+        int from = name.indexOf('-') + 1;
+        return Long.parseLong(name.substring(from, from + 16));
+    }
+
+    private static String pad(long n) {
+        return String.format("%016d", n);
+    }
+
+    /** Escreve registros em arquivos mapeados de tamanho fixo, abrindo o próximo quando o atual enche. */
+    private static final class MappedWriter implements JournalSink {
+        private final LongFunction<Path> pathOf;
+        private final int fileBytes;
+        private final JournalCodec.Encoder encoder = new JournalCodec.Encoder();
+        private final CRC32C crc = new CRC32C();
+        // arquivos cheios esperando o force() de quem chamar force(), normalmente a thread de manutenção
+        private final Queue<MappedByteBuffer> retired = new ConcurrentLinkedQueue<>();
+        private volatile MappedByteBuffer active;
+        private long current = -1;
+        private long next;
+
+        MappedWriter(LongFunction<Path> pathOf, int fileBytes, long firstSeq) {
+            this.pathOf = pathOf;
+            this.fileBytes = fileBytes;
+            this.next = firstSeq;
+        }
+
+        /** Número do arquivo ativo; -1 antes do primeiro. */
+        long current() { return current; }
+
+        @Override
+        public void cacheEntry(ScoreKey key, CachedScore entry) {
+            encoder.reset();
+            JournalCodec.cacheEntry(encoder, key, entry);
+            append();
+        }
+
+        @Override
+        public void jobAccepted(ScoreJob job) {
+            encoder.reset();
+            JournalCodec.jobAccepted(encoder, job);
+            append();
+        }
+
+        @Override
+        public void jobDone(ScoreJob job, ScoreJob.Result result) {
+            encoder.reset();
+            JournalCodec.jobDone(encoder, job, result);
+            append();
+        }
+
+        private void append() {
+            int len = encoder.pos;
+            if (len + 8 > fileBytes) {
+                log.warn("Registro de {} bytes maior que o segmento do journal; ignorado", len);
+                return;
+            }
+            MappedByteBuffer buf = active;
+            if (buf == null || buf.remaining() < len + 8) {
+                roll();
+                buf = active;
+            }
+            int start = buf.position();
+            buf.position(start + 4);
+            buf.put(encoder.buf, 0, len);
+            crc.reset();
+            crc.update(encoder.buf, 0, len);
+            buf.putInt((int) crc.getValue());
+            buf.putInt(start, len);
+        }
+
+        /** Abre o próximo arquivo; o anterior fica para o próximo {@link #force()}. */
+        void roll() {
+            try (FileChannel ch = FileChannel.open(pathOf.apply(next), StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer opened = ch.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes);
+                if (active != null) {
+                    retired.add(active);
+                }
+                active = opened;
+                current = next++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /** Força os arquivos fechados desde a última chamada e o ativo; pode rodar junto com a escrita. */
+        void force() {
+            for (MappedByteBuffer full; (full = retired.poll()) != null; ) {
+                full.force();
+            }
+            MappedByteBuffer buf = active;
+            if (buf != null) {
+                buf.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package dev.hsborges.proxy.persistence;
+
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.job.ScoreJob;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Journal append-only das entradas do cache e dos jobs aceitos, para sobreviver a restart e deploy.
+ * {@link #NOOP} é usado quando a persistência está desligada.
+ */
+public interface ScoreJournal extends JournalSink {
+
+    ScoreJournal NOOP = new ScoreJournal() {
+        @Override public void cacheEntry(ScoreKey key, CachedScore entry) { }
+        @Override public void jobAccepted(ScoreJob job) { }
+        @Override public void jobDone(ScoreJob job, ScoreJob.Result result) { }
+    };
+
+    default boolean isEnabled() { return this != NOOP; }
+
+    /** Entrega todos os registros válidos, do snapshot mais recente ao último segmento. */
+    default void replay(JournalSink visitor) throws IOException { }
+
+    /**
+     * Escreve um snapshot com o estado vivo (passado por {@code snapshot}) e apaga os segmentos que ele
+     * substitui. Registros escritos durante a compactação vão para um segmento novo e não se perdem.
+     */
+    default void compact(Consumer<JournalSink> snapshot) throws IOException { }
+
+    /** Força as páginas do segmento ativo para o disco. */
+    default void flush() { }
+
+    default void close() { }
+}
@@ -0,0 +1,30 @@
+package dev.hsborges.proxy.queue;
+
+import dev.hsborges.proxy.cache.ScoreKey;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registro single-flight: mantém a requisição pendente de cada chave de consulta para que chamadas
+ * idênticas aguardem o mesmo future em vez de consumir outro slot do upstream.
+ */
+public class InFlightRegistry {
+    private final ConcurrentHashMap<ScoreKey, PrioritizedRequest> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Registra {@code req} como líder da chave ou devolve a requisição já pendente para ela.
+     * A entrada é removida automaticamente quando o future do líder completa.
+     */
+    public PrioritizedRequest register(ScoreKey key, PrioritizedRequest req) {
+        PrioritizedRequest existing = inFlight.putIfAbsent(key, req);
+        if (existing != null) {
+            return existing;
+        }
+        req.getFuture().whenComplete((body, err) -> inFlight.remove(key, req));
+        return req;
+    }
+
+    public PrioritizedRequest get(ScoreKey key) { return inFlight.get(key); }
+
+    public int size() { return inFlight.size(); }
+}
@@ -1,58 +1,134 @@
 package dev.hsborges.proxy.queue;
 
+import dev.hsborges.proxy.cache.ScoreKey;
+
 import java.time.Instant;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class PrioritizedRequest implements Comparable<PrioritizedRequest> {
 
     public enum Priority { HIGH, MEDIUM, LOW }
 
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
     private final String id;
+    private final ScoreKey key;
+    private final long sequence;
     private final String path;
     private final Map<String, String> queryParams;
     private final Map<String, String> headers;
     private final String clientId;
-    private final Priority priority;
-    private final Instant enqueuedAt;
-    private final Instant expiresAt;
-    private final CompletableFuture<String> future;
+    private volatile Priority priority;
+    private final long enqueuedNanos;
+    // marcas de System.nanoTime() de cada etapa, gravadas pela thread do scheduler; 0 = etapa não ocorreu
+    private volatile long polledNanos;
+    private volatile long dispatchedNanos;
+    private volatile long respondedNanos;
+    private volatile long transformNanos;
+    // status HTTP da resposta que completou o future; gravado antes de completá-lo
+    private volatile int responseStatus = 200;
+    // prazo usado na ordenação (o mais cedo entre os chamadores) e o que descarta por TTL (o mais tarde)
+    private volatile Instant deadline;
+    private volatile Instant expiresAt;
+    private volatile boolean backlog;
+    private final CompletableFuture<byte[]> future;
 
-    public PrioritizedRequest(String path,
+    public PrioritizedRequest(ScoreKey key,
+                              String path,
                               Map<String, String> queryParams,
                               Map<String, String> headers,
                               String clientId,
                               Priority priority,
                               Instant expiresAt) {
         this.id = UUID.randomUUID().toString();
+        this.sequence = SEQUENCE.incrementAndGet();
+        this.key = key;
         this.path = path;
         this.queryParams = queryParams;
         this.headers = headers;
         this.clientId = clientId;
         this.priority = priority == null ? Priority.MEDIUM : priority;
-        this.enqueuedAt = Instant.now();
+        this.enqueuedNanos = System.nanoTime();
+        this.deadline = expiresAt;
         this.expiresAt = expiresAt;
         this.future = new CompletableFuture<>();
     }
 
     public String getId() { return id; }
+    public ScoreKey getKey() { return key; }
     public String getPath() { return path; }
     public Map<String, String> getQueryParams() { return queryParams; }
     public Map<String, String> getHeaders() { return headers; }
     public String getClientId() { return clientId; }
     public Priority getPriority() { return priority; }
-    public Instant getEnqueuedAt() { return enqueuedAt; }
+    public long getEnqueuedNanos() { return enqueuedNanos; }
+    /** Prazo que ordena a requisição na fila; {@code null} só quando nenhum chamador tem prazo. */
+    public Instant getDeadline() { return deadline; }
+    /** Prazo após o qual a requisição é descartada por TTL; {@code null} se algum chamador não tem prazo. */
     public Instant getExpiresAt() { return expiresAt; }
     public boolean isExpired() { return expiresAt != null && Instant.now().isAfter(expiresAt); }
-    public CompletableFuture<String> getFuture() { return future; }
+    public CompletableFuture<byte[]> getFuture() { return future; }
+    /** Entrou pela capacidade do backlog de jobs, não pela fila interativa. */
+    public boolean isBacklog() { return backlog; }
+
+    void markBacklog() { backlog = true; }
+
+    public void markPolled(long nanos) { polledNanos = nanos; }
+    public void markDispatched(long nanos) { dispatchedNanos = nanos; }
+    public int getResponseStatus() { return responseStatus; }
+    public void setResponseStatus(int responseStatus) { this.responseStatus = responseStatus; }
+
+    public void markResponded(long nanos, long transformNanos) {
+        this.transformNanos = transformNanos;
+        this.respondedNanos = nanos;
+    }
+
+    /** Tempo na fila até o scheduler retirar a requisição; 0 se ainda não saiu. */
+    public long queueWaitNanos() { return stage(enqueuedNanos, polledNanos); }
+    /** Entre sair da fila e a chamada ao upstream começar; 0 se não houve chamada. */
+    public long dispatchDelayNanos() { return polledNanos == 0 ? 0 : stage(polledNanos, dispatchedNanos); }
+    /** Duração da chamada ao upstream, incluindo a transformação do corpo. */
+    public long upstreamNanos() { return stage(dispatchedNanos, respondedNanos); }
+    public long transformNanos() { return transformNanos; }
 
+    private static long stage(long from, long to) { return to == 0 ? 0 : Math.max(0, to - from); }
+
+    /** Só deve ser chamado com a requisição fora da fila, pois altera a ordenação. */
+    void raisePriority(Priority candidate) {
+        if (candidate.ordinal() < priority.ordinal()) {
+            priority = candidate;
+        }
+    }
+
+    /**
+     * Junta o prazo de um chamador coalescido ({@code null} = sem prazo): a ordenação segue o prazo mais
+     * cedo, para quem tem pressa não esperar atrás do prazo longo de outro, e o descarte por TTL segue o
+     * mais tarde, para ninguém perder a resposta antes do próprio prazo. Assim como {@link #raisePriority},
+     * só pode ser chamado com a requisição fora da fila.
+     */
+    void mergeDeadline(Instant candidate) {
+        if (candidate != null && (deadline == null || candidate.isBefore(deadline))) {
+            deadline = candidate;
+        }
+        if (expiresAt != null && (candidate == null || candidate.isAfter(expiresAt))) {
+            expiresAt = candidate;
+        }
+    }
+
+    /** Earliest-deadline-first dentro de uma classe de prioridade; sem prazo vai para o fim. */
     @Override
     public int compareTo(PrioritizedRequest other) {
-        int byPriority = other.priority.ordinal() - this.priority.ordinal();
-        if (byPriority != 0) return byPriority;
-        return this.enqueuedAt.compareTo(other.enqueuedAt);
+        Instant a = this.deadline;
+        Instant b = other.deadline;
+        if (a != b) {
+            if (a == null) return 1;
+            if (b == null) return -1;
+            int byDeadline = a.compareTo(b);
+            if (byDeadline != 0) return byDeadline;
+        }
+        return Long.compare(this.sequence, other.sequence);
     }
 }
-
-
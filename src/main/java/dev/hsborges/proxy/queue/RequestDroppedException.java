@@ -0,0 +1,16 @@
+package dev.hsborges.proxy.queue;
+
+/**
+ * Sinaliza que a requisição saiu da fila sem chegar ao upstream; {@code reason} segue a tag de
+ * {@code proxy.queue.drop}.
+ */
+public class RequestDroppedException extends RuntimeException {
+    private final String reason;
+
+    public RequestDroppedException(String reason) {
+        super("Request dropped: " + reason);
+        this.reason = reason;
+    }
+
+    public String getReason() { return reason; }
+}
@@ -1,40 +1,415 @@
 package dev.hsborges.proxy.queue;
 
-import java.util.concurrent.PriorityBlockingQueue;
+import java.time.Instant;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Fila com capacidade global particionada por credencial (tenant): requisições com {@code x-client-id}
+ * explícito só podem ser atendidas pela credencial indicada; as demais ficam na partição compartilhada
+ * e podem ser atendidas por qualquer credencial do pool.
+ *
+ * <p>Cada partição tem um conjunto sem lock por prioridade, ordenado por prazo (earliest-deadline-first,
+ * empate pela ordem de chegada). A retirada usa deficit round robin entre as prioridades (pesos
+ * configuráveis), alternando entre as partições elegíveis, então LOW continua recebendo uma fração dos
+ * slots mesmo com HIGH contínuo. Além disso, uma entrada envelhece uma classe a cada {@code agingMs} de
+ * espera e, ao atingir o nível de HIGH, disputa com a cabeça de HIGH: sai a que chegou primeiro.
+ *
+ * <p>Jobs assíncronos entram por {@link #offerBacklog} com capacidade própria, bem maior, e sem prazo: ficam
+ * no fim da sua classe e não envelhecem, então só ocupam a fatia da classe e os slots que sobram.
+ *
+ * <p>{@code offer}, {@code promote} e {@code size} são thread-safe; {@code poll} assume um único
+ * consumidor (o scheduler).
+ */
 public class RequestQueue {
-    private final PriorityBlockingQueue<PrioritizedRequest> queue;
+    public static final String SHARED = "";
+
+    private static final PrioritizedRequest.Priority[] PRIORITIES = PrioritizedRequest.Priority.values();
+    private static final int[] DEFAULT_WEIGHTS = {8, 4, 1};
+
+    private final ConcurrentHashMap<String, Partition> partitions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, DrrState> consumers = new ConcurrentHashMap<>();
+    private final AtomicInteger[] depthByPriority = new AtomicInteger[PRIORITIES.length];
+    private final LongAdder aged = new LongAdder();
+    private final int[] weights;
+    private final long agingMs;
     private final int maxSize;
     private final Semaphore sizeGuard;
+    private final int backlogMaxSize;
+    private final Semaphore backlogGuard;
+    private final Semaphore workSignal = new Semaphore(0);
 
     public RequestQueue(int maxSize) {
+        this(maxSize, DEFAULT_WEIGHTS, 2500);
+    }
+
+    /**
+     * @param weights slots por rodada para HIGH, MEDIUM e LOW
+     * @param agingMs espera que promove uma entrada em uma classe; 0 desliga o envelhecimento
+     */
+    public RequestQueue(int maxSize, int[] weights, long agingMs) {
+        this(maxSize, 0, weights, agingMs);
+    }
+
+    /**
+     * @param backlogMaxSize capacidade separada para jobs sem prazo ({@link #offerBacklog})
+     * @param weights        slots por rodada para HIGH, MEDIUM e LOW
+     * @param agingMs        espera que promove uma entrada em uma classe; 0 desliga o envelhecimento
+     */
+    public RequestQueue(int maxSize, int backlogMaxSize, int[] weights, long agingMs) {
+        if (weights.length != PRIORITIES.length) {
+            throw new IllegalArgumentException("expected one weight per priority: " + PRIORITIES.length);
+        }
         this.maxSize = maxSize;
-        this.queue = new PriorityBlockingQueue<>();
         this.sizeGuard = new Semaphore(maxSize);
+        this.backlogMaxSize = backlogMaxSize;
+        this.backlogGuard = new Semaphore(backlogMaxSize);
+        this.weights = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            this.weights[i] = Math.max(1, weights[i]);
+            this.depthByPriority[i] = new AtomicInteger();
+        }
+        this.agingMs = agingMs;
     }
 
     public boolean offer(PrioritizedRequest req, long timeoutMs) throws InterruptedException {
         if (!sizeGuard.tryAcquire(timeoutMs, TimeUnit.MILLISECONDS)) {
             return false;
         }
-        boolean added = queue.offer(req);
-        if (!added) {
-            sizeGuard.release();
+        insert(req);
+        workSignal.release();
+        return true;
+    }
+
+    /** Enfileira um job sem prazo na capacidade do backlog; não espera vaga. */
+    public boolean offerBacklog(PrioritizedRequest req) {
+        if (!backlogGuard.tryAcquire()) {
+            return false;
+        }
+        req.markBacklog();
+        insert(req);
+        workSignal.release();
+        return true;
+    }
+
+    /**
+     * Devolve à fila uma requisição retirada que não pôde ser despachada; o prazo a recoloca na mesma
+     * posição. Não acorda o scheduler, que decide sozinho quando tentar de novo.
+     */
+    public boolean requeue(PrioritizedRequest req) {
+        if (!guardOf(req).tryAcquire()) {
+            return false;
         }
-        return added;
+        insert(req);
+        return true;
     }
 
-    public PrioritizedRequest take() throws InterruptedException {
-        PrioritizedRequest req = queue.take();
-        sizeGuard.release();
+    // prioridade e prazo só mudam com a requisição fora do conjunto e sob o monitor dela
+    private void insert(PrioritizedRequest req) {
+        Partition partition = partition(partitionOf(req));
+        synchronized (req) {
+            int cls = req.getPriority().ordinal();
+            partition.byPriority[cls].add(req);
+            count(partition, req, cls, 1);
+            partition.size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Retira a próxima requisição atendível pela credencial: as fixadas nela e, se {@code includeShared},
+     * as da partição compartilhada.
+     */
+    public PrioritizedRequest poll(String clientId, boolean includeShared) {
+        Partition pinned = partitions.get(clientId);
+        Partition shared = includeShared ? partitions.get(SHARED) : null;
+        if (pinned == null && shared == null) {
+            return null;
+        }
+        DrrState state = consumers.computeIfAbsent(clientId, k -> new DrrState(weights));
+        PrioritizedRequest req = pollAged(pinned, shared);
+        if (req == null) {
+            req = pollWeighted(pinned, shared, state);
+        }
+        if (req != null) {
+            guardOf(req).release();
+        }
         return req;
     }
 
+    /**
+     * Entrada de MEDIUM ou LOW que já esperou o suficiente para valer como HIGH. Ela não fura a fila de
+     * HIGH: se a cabeça de HIGH chegou antes, é a cabeça de HIGH que sai.
+     */
+    private PrioritizedRequest pollAged(Partition pinned, Partition shared) {
+        if (agingMs <= 0) {
+            return null;
+        }
+        long now = System.nanoTime();
+        Partition source = null;
+        PrioritizedRequest oldest = null;
+        int sourceCls = -1;
+        // HIGH não envelhece; uma entrada da classe c alcança HIGH após c * agingMs
+        for (int cls = 1; cls < PRIORITIES.length; cls++) {
+            long threshold = TimeUnit.MILLISECONDS.toNanos(cls * agingMs);
+            for (int i = 0; i < 2; i++) {
+                Partition p = i == 0 ? pinned : shared;
+                PrioritizedRequest head = p == null ? null : peek(p.byPriority[cls]);
+                // sem prazo (jobs) fica no fim do conjunto e não envelhece
+                if (head != null && head.getDeadline() != null
+                        && now - head.getEnqueuedNanos() >= threshold
+                        && (oldest == null || head.getEnqueuedNanos() - oldest.getEnqueuedNanos() < 0)) {
+                    oldest = head;
+                    source = p;
+                    sourceCls = cls;
+                }
+            }
+        }
+        if (oldest == null) {
+            return null;
+        }
+        for (int i = 0; i < 2; i++) {
+            Partition p = i == 0 ? pinned : shared;
+            PrioritizedRequest high = p == null ? null : peek(p.byPriority[0]);
+            if (high != null && high.getEnqueuedNanos() - oldest.getEnqueuedNanos() < 0) {
+                oldest = high;
+                source = p;
+                sourceCls = 0;
+            }
+        }
+        if (!take(source, oldest, sourceCls)) {
+            return null;
+        }
+        if (sourceCls > 0) {
+            aged.increment();
+        }
+        return oldest;
+    }
+
+    private PrioritizedRequest pollWeighted(Partition pinned, Partition shared, DrrState state) {
+        for (int step = 0; step <= 2 * PRIORITIES.length; step++) {
+            int cls = state.current;
+            if (state.credit[cls] >= 1) {
+                PrioritizedRequest req = pollClass(pinned, shared, cls, state);
+                if (req != null) {
+                    state.credit[cls]--;
+                    return req;
+                }
+                // classe vazia não acumula crédito
+                state.credit[cls] = 0;
+            }
+            state.current = (cls + 1) % PRIORITIES.length;
+            state.credit[state.current] += weights[state.current];
+        }
+        return null;
+    }
+
+    private PrioritizedRequest pollClass(Partition pinned, Partition shared, int cls, DrrState state) {
+        Partition first = state.preferShared ? shared : pinned;
+        Partition second = state.preferShared ? pinned : shared;
+        state.preferShared = !state.preferShared;
+        PrioritizedRequest req = pollFrom(first, cls);
+        return req != null ? req : pollFrom(second, cls);
+    }
+
+    private PrioritizedRequest pollFrom(Partition partition, int cls) {
+        if (partition == null) {
+            return null;
+        }
+        PrioritizedRequest req;
+        // a cabeça pode sair por promote entre o peek e o remove; nesse caso tenta a próxima
+        while ((req = peek(partition.byPriority[cls])) != null) {
+            if (take(partition, req, cls)) {
+                return req;
+            }
+        }
+        return null;
+    }
+
+    // sob o monitor da requisição, como promote e mergeDeadline: os contadores veem o prazo de quando ela saiu
+    private boolean take(Partition partition, PrioritizedRequest req, int cls) {
+        synchronized (req) {
+            if (!partition.byPriority[cls].remove(req)) {
+                return false;
+            }
+            count(partition, req, cls, -1);
+            partition.size.decrementAndGet();
+            return true;
+        }
+    }
+
+    public boolean hasWork(String clientId, boolean includeShared) {
+        Partition pinned = partitions.get(clientId);
+        if (pinned != null && !pinned.isEmpty()) {
+            return true;
+        }
+        Partition shared = includeShared ? partitions.get(SHARED) : null;
+        return shared != null && !shared.isEmpty();
+    }
+
+    /** Entradas aguardando na partição (credencial ou {@link #SHARED}), contando jobs do backlog. */
+    public int partitionSize(String id) {
+        Partition partition = partitions.get(id);
+        return partition == null ? 0 : partition.size.get();
+    }
+
+    /** Credenciais com partição própria (inclui {@link #SHARED}). */
+    public Set<String> partitionIds() { return partitions.keySet(); }
+
+    /** Aguarda uma nova oferta ou {@link #signal()} por no máximo {@code nanos}. */
+    public void awaitWork(long nanos) throws InterruptedException {
+        if (workSignal.tryAcquire(nanos, TimeUnit.NANOSECONDS)) {
+            workSignal.drainPermits();
+        }
+    }
+
+    /** Acorda o consumidor, por exemplo quando uma credencial volta a ter capacidade. */
+    public void signal() { workSignal.release(); }
+
+    /**
+     * Move uma requisição já enfileirada para uma classe de prioridade maior. Retorna {@code false} se
+     * ela já tiver sido retirada pelo scheduler.
+     */
+    public boolean promote(PrioritizedRequest req, PrioritizedRequest.Priority priority) {
+        Partition partition = partitions.get(partitionOf(req));
+        if (partition == null) {
+            return false;
+        }
+        synchronized (req) {
+            int from = req.getPriority().ordinal();
+            if (priority.ordinal() >= from || !partition.byPriority[from].remove(req)) {
+                return false;
+            }
+            count(partition, req, from, -1);
+            req.raisePriority(priority);
+            partition.byPriority[priority.ordinal()].add(req);
+            count(partition, req, priority.ordinal(), 1);
+            return true;
+        }
+    }
+
+    /**
+     * Junta o prazo de um novo chamador ao de uma requisição (ver {@link PrioritizedRequest#mergeDeadline}),
+     * mantendo a ordenação por prazo. Funciona também antes de ela ser enfileirada ou depois de retirada.
+     */
+    public void mergeDeadline(PrioritizedRequest req, Instant expiresAt) {
+        Partition partition = partition(partitionOf(req));
+        synchronized (req) {
+            int cls = req.getPriority().ordinal();
+            ConcurrentSkipListSet<PrioritizedRequest> set = partition.byPriority[cls];
+            boolean removed = set.remove(req);
+            if (removed) {
+                count(partition, req, cls, -1);
+            }
+            req.mergeDeadline(expiresAt);
+            if (removed) {
+                set.add(req);
+                count(partition, req, cls, 1);
+            }
+        }
+    }
+
     public int size() { return maxSize - sizeGuard.availablePermits(); }
-}
 
+    /** Vagas livres na capacidade interativa. */
+    public int remainingCapacity() { return sizeGuard.availablePermits(); }
+
+    /** Jobs aguardando na capacidade do backlog. */
+    public int backlogSize() { return backlogMaxSize - backlogGuard.availablePermits(); }
+
+    public boolean isEmpty() { return size() == 0 && backlogSize() == 0; }
+
+    public int depth(PrioritizedRequest.Priority priority) { return depthByPriority[priority.ordinal()].get(); }
+
+    public int weight(PrioritizedRequest.Priority priority) { return weights[priority.ordinal()]; }
+
+    /**
+     * Quantas entradas da mesma classe e partição seriam retiradas antes de {@code probe}, em O(1) pelos
+     * contadores: com prazo, todas as entradas com prazo da classe (limite superior, pois as de prazo
+     * posterior também contam); sem prazo, a classe inteira. O probe não precisa estar enfileirado.
+     * Jobs aos quais um chamador com prazo se anexou passam a contar como entradas com prazo.
+     */
+    public int countAhead(PrioritizedRequest probe) {
+        Partition partition = partitions.get(partitionOf(probe));
+        if (partition == null) {
+            return 0;
+        }
+        int cls = probe.getPriority().ordinal();
+        int depth = partition.depth[cls].get();
+        // entradas sem prazo (jobs) ficam no fim da classe e nunca estão à frente de quem tem prazo
+        return probe.getDeadline() == null ? depth : Math.max(0, depth - partition.undated[cls].get());
+    }
+
+    /** Total de entradas atendidas antes da vez por envelhecimento. */
+    public long agedCount() { return aged.sum(); }
+
+    private static PrioritizedRequest peek(ConcurrentSkipListSet<PrioritizedRequest> set) {
+        try {
+            return set.first();
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
+
+    private void count(Partition partition, PrioritizedRequest req, int cls, int delta) {
+        depthByPriority[cls].addAndGet(delta);
+        partition.depth[cls].addAndGet(delta);
+        if (req.getDeadline() == null) {
+            partition.undated[cls].addAndGet(delta);
+        }
+    }
+
+    private Semaphore guardOf(PrioritizedRequest req) {
+        return req.isBacklog() ? backlogGuard : sizeGuard;
+    }
+
+    private Partition partition(String id) {
+        return partitions.computeIfAbsent(id, k -> new Partition());
+    }
+
+    private static String partitionOf(PrioritizedRequest req) {
+        String clientId = req.getClientId();
+        return clientId == null || clientId.isBlank() ? SHARED : clientId;
+    }
 
+    private static final class Partition {
+        @SuppressWarnings("unchecked")
+        final ConcurrentSkipListSet<PrioritizedRequest>[] byPriority = new ConcurrentSkipListSet[PRIORITIES.length];
+        // tamanho de cada conjunto sem percorrê-lo (size() do skip list é O(n)), e quantos não têm prazo
+        final AtomicInteger[] depth = new AtomicInteger[PRIORITIES.length];
+        final AtomicInteger[] undated = new AtomicInteger[PRIORITIES.length];
+        final AtomicInteger size = new AtomicInteger();
 
+        Partition() {
+            for (int i = 0; i < byPriority.length; i++) {
+                byPriority[i] = new ConcurrentSkipListSet<>();
+                depth[i] = new AtomicInteger();
+                undated[i] = new AtomicInteger();
+            }
+        }
 
+        boolean isEmpty() {
+            for (ConcurrentSkipListSet<PrioritizedRequest> q : byPriority) {
+                if (!q.isEmpty()) return false;
+            }
+            return true;
+        }
+    }
+
+    /** Estado do deficit round robin de cada consumidor; só é tocado pela thread do scheduler. */
+    private static final class DrrState {
+        final int[] credit;
+        int current;
+        boolean preferShared;
+
+        DrrState(int[] weights) {
+            credit = new int[weights.length];
+            credit[0] = weights[0];
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package dev.hsborges.proxy.scheduler;
+
+/**
+ * Additive-increase/multiplicative-decrease. A cada janela de respostas saudáveis a taxa sobe um passo
+ * fixo até o teto; só depois de a taxa ficar no teto por uma janela inteira a concorrência ganha mais
+ * uma chamada. Qualquer falha ou latência que indique a penalidade do upstream multiplica a taxa pelo
+ * fator de recuo e divide a concorrência pela metade.
+ *
+ * <p>A penalidade é reconhecida comparando a latência com uma média móvel das latências saudáveis,
+ * então o controlador não depende de conhecer a latência normal do upstream.
+ */
+public class AimdRateController implements RateController {
+    private static final double BASELINE_ALPHA = 0.2;
+
+    private final double minRate;
+    private final double maxRate;
+    private final double increaseStep;
+    private final double decreaseFactor;
+    private final int maxConcurrency;
+    private final long penaltyThresholdMs;
+    private final int healthyWindow;
+
+    private volatile double rate;
+    private volatile int concurrency = 1;
+    private volatile long backoffs;
+    private double baselineLatencyMs = -1;
+    private int healthyStreak;
+
+    public AimdRateController(double initialRate, double minRate, double maxRate, double increaseStep,
+                              double decreaseFactor, int maxConcurrency, long penaltyMs, int healthyWindow) {
+        if (minRate <= 0 || maxRate < minRate) {
+            throw new IllegalArgumentException("invalid rate bounds: min=" + minRate + " max=" + maxRate);
+        }
+        if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("decreaseFactor must be in (0, 1)");
+        }
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.increaseStep = increaseStep;
+        this.decreaseFactor = decreaseFactor;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        // margem para não confundir jitter com a penalidade
+        this.penaltyThresholdMs = penaltyMs * 3 / 4;
+        this.healthyWindow = Math.max(1, healthyWindow);
+        this.rate = Math.min(maxRate, Math.max(minRate, initialRate));
+    }
+
+    @Override
+    public double currentRate() { return rate; }
+
+    @Override
+    public int concurrencyLimit() { return concurrency; }
+
+    @Override
+    public long backoffCount() { return backoffs; }
+
+    @Override
+    public synchronized void onResponse(long latencyMs, boolean failed) {
+        boolean penalized = baselineLatencyMs >= 0 && latencyMs > baselineLatencyMs + penaltyThresholdMs;
+        if (failed || penalized) {
+            rate = Math.max(minRate, rate * decreaseFactor);
+            concurrency = Math.max(1, concurrency / 2);
+            healthyStreak = 0;
+            backoffs++;
+            return;
+        }
+        baselineLatencyMs = baselineLatencyMs < 0
+                ? latencyMs
+                : baselineLatencyMs + BASELINE_ALPHA * (latencyMs - baselineLatencyMs);
+        if (++healthyStreak < healthyWindow) {
+            return;
+        }
+        healthyStreak = 0;
+        if (rate < maxRate) {
+            rate = Math.min(maxRate, rate + increaseStep);
+        } else if (concurrency < maxConcurrency) {
+            concurrency++;
+        }
+    }
+}
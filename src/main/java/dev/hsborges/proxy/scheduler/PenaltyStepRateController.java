@@ -0,0 +1,36 @@
+package dev.hsborges.proxy.scheduler;
+
+/**
+ * Heurística original de dois estados: se a latência indicar a penalidade do upstream, passa a
+ * espaçar as chamadas em base + penalidade; caso contrário volta à taxa base.
+ */
+public class PenaltyStepRateController implements RateController {
+    private final long baseIntervalMs;
+    private final long penaltyMs;
+    private volatile long intervalMs;
+    private volatile long backoffs;
+
+    public PenaltyStepRateController(double baseRate, long penaltyMs) {
+        this.baseIntervalMs = Math.round(1000d / baseRate);
+        this.penaltyMs = penaltyMs;
+        this.intervalMs = baseIntervalMs;
+    }
+
+    @Override
+    public double currentRate() { return 1000d / intervalMs; }
+
+    @Override
+    public int concurrencyLimit() { return 1; }
+
+    @Override
+    public synchronized void onResponse(long latencyMs, boolean failed) {
+        long target = latencyMs > (baseIntervalMs + penaltyMs - 50) ? baseIntervalMs + penaltyMs : baseIntervalMs; // heurística simples
+        if (target > intervalMs) {
+            backoffs++;
+        }
+        intervalMs = target;
+    }
+
+    @Override
+    public long backoffCount() { return backoffs; }
+}
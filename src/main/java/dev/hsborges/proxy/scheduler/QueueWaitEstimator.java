@@ -0,0 +1,48 @@
+package dev.hsborges.proxy.scheduler;
+
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.queue.RequestQueue;
+import org.springframework.stereotype.Component;
+
+/**
+ * Estima quanto uma nova requisição esperaria na fila, a partir da taxa atual das credenciais que podem
+ * atendê-la e da sua posição: as entradas da mesma classe à frente dela (pelos contadores da fila, sem
+ * percorrer os conjuntos), mais a fatia que o deficit round robin entrega às outras classes enquanto
+ * essas são atendidas.
+ */
+@Component
+public class QueueWaitEstimator {
+    private static final PrioritizedRequest.Priority[] PRIORITIES = PrioritizedRequest.Priority.values();
+
+    private final RequestQueue queue;
+    private final UpstreamLanePool lanes;
+
+    public QueueWaitEstimator(RequestQueue queue, UpstreamLanePool lanes) {
+        this.queue = queue;
+        this.lanes = lanes;
+    }
+
+    /** Espera estimada em ms; {@link Long#MAX_VALUE} quando nenhuma credencial pode atender. */
+    public long estimateWaitMs(PrioritizedRequest probe) {
+        double rate = lanes.dispatchRate(probe.getClientId());
+        if (rate <= 0) {
+            return Long.MAX_VALUE;
+        }
+        PrioritizedRequest.Priority priority = probe.getPriority();
+        long ownSlots = queue.countAhead(probe) + 1L;
+        double slots = ownSlots;
+        for (PrioritizedRequest.Priority other : PRIORITIES) {
+            if (other != priority) {
+                double share = Math.ceil(ownSlots * (double) queue.weight(other) / queue.weight(priority));
+                slots += Math.min(queue.depth(other), share);
+            }
+        }
+        return (long) Math.ceil(slots * 1000d / rate);
+    }
+
+    /** Tempo típico até abrir um slot para o cliente informado. */
+    public long slotIntervalMs(String clientId) {
+        double rate = lanes.dispatchRate(clientId);
+        return rate <= 0 ? Long.MAX_VALUE : (long) Math.ceil(1000d / rate);
+    }
+}
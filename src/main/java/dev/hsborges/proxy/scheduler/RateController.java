@@ -0,0 +1,23 @@
+package dev.hsborges.proxy.scheduler;
+
+/**
+ * Estratégia de controle de taxa usada pelo {@link RateLimitedScheduler}. Recebe o resultado de cada
+ * chamada ao upstream e decide a taxa de dispatch e quantas chamadas podem estar em voo ao mesmo tempo.
+ */
+public interface RateController {
+
+    /** Taxa atual de dispatch em requisições por segundo. */
+    double currentRate();
+
+    /** Número máximo de chamadas simultâneas ao upstream. */
+    int concurrencyLimit();
+
+    /**
+     * @param latencyMs latência observada da chamada
+     * @param failed    erro de transporte, fallback, 429 ou 5xx
+     */
+    void onResponse(long latencyMs, boolean failed);
+
+    /** Quantas vezes a estratégia detectou penalidade e recuou desde o início. */
+    long backoffCount();
+}
@@ -0,0 +1,6 @@
+package dev.hsborges.proxy.scheduler;
+
+@FunctionalInterface
+public interface RateControllerFactory {
+    RateController create();
+}
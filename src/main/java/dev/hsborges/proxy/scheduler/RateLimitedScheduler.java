@@ -1,45 +1,45 @@
 package dev.hsborges.proxy.scheduler;
 
-import dev.hsborges.proxy.config.ProxyConfig;
-import com.github.benmanes.caffeine.cache.Cache;
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.HotKeyPrefetcher;
+import dev.hsborges.proxy.cache.ScoreCache;
+import dev.hsborges.proxy.metrics.ProxyMetrics;
 import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.queue.RequestDroppedException;
 import dev.hsborges.proxy.queue.RequestQueue;
 import dev.hsborges.proxy.upstream.UpstreamClient;
-import io.micrometer.core.instrument.MeterRegistry;
-import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import jakarta.annotation.PostConstruct;
-import java.time.Duration;
-import java.time.Instant;
-import java.util.Map;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 
 @Component
 public class RateLimitedScheduler {
     private static final Logger log = LoggerFactory.getLogger(RateLimitedScheduler.class);
+    private static final long MAX_IDLE_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long ACQUIRE_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
 
     private final RequestQueue queue;
     private final UpstreamClient upstreamClient;
-    private final ProxyConfig config;
-    private final MeterRegistry metrics;
-    private final Cache<String, String> cache;
+    private final UpstreamLanePool lanes;
+    private final ProxyMetrics metrics;
+    private final ScoreCache cache;
+    private final HotKeyPrefetcher prefetcher;
 
     private Thread workerThread;
-    private final AtomicLong currentIntervalMs = new AtomicLong();
-    private final Timer latencyTimer;
+    private int cursor;
 
-    public RateLimitedScheduler(RequestQueue queue, UpstreamClient upstreamClient, ProxyConfig config, MeterRegistry registry, Cache<String, String> cache) {
+    public RateLimitedScheduler(RequestQueue queue, UpstreamClient upstreamClient, UpstreamLanePool lanes,
+                                ProxyMetrics metrics, ScoreCache cache, HotKeyPrefetcher prefetcher) {
         this.queue = queue;
         this.upstreamClient = upstreamClient;
-        this.config = config;
-        this.metrics = registry;
+        this.lanes = lanes;
+        this.metrics = metrics;
         this.cache = cache;
-        this.currentIntervalMs.set(config.getSchedulerBaseIntervalMs());
-        this.latencyTimer = Timer.builder("proxy.upstream.latency").register(registry);
+        this.prefetcher = prefetcher;
     }
 
     @PostConstruct
@@ -49,8 +49,10 @@ public class RateLimitedScheduler {
                 // pequeno atraso inicial
                 Thread.sleep(200);
                 while (!Thread.currentThread().isInterrupted()) {
-                    drainOnce();
-                    Thread.sleep(currentIntervalMs.get());
+                    long waitNanos = drainOnce();
+                    if (waitNanos > 0) {
+                        queue.awaitWork(waitNanos);
+                    }
                 }
             } catch (InterruptedException ie) {
                 Thread.currentThread().interrupt();
@@ -60,55 +62,154 @@ public class RateLimitedScheduler {
         workerThread.start();
     }
 
-    private void drainOnce() {
+    /**
+     * Percorre as credenciais a partir de um cursor rotativo e despacha, em cada uma que tiver orçamento,
+     * a requisição de maior prioridade que ela pode atender. Retorna quanto esperar se nada foi feito.
+     */
+    private long drainOnce() {
+        for (String partition : queue.partitionIds()) {
+            if (!RequestQueue.SHARED.equals(partition)) {
+                lanes.lane(partition);
+            }
+        }
+        List<UpstreamLane> all = lanes.lanes();
+        int n = all.size();
+        long waitNanos = MAX_IDLE_WAIT_NANOS;
+        boolean progressed = false;
+        for (int i = 0; i < n; i++) {
+            UpstreamLane lane = all.get(Math.floorMod(cursor + i, n));
+            if (!queue.hasWork(lane.getClientId(), lane.isPooled())) {
+                continue;
+            }
+            long readyIn = lane.nanosUntilReady();
+            if (readyIn > 0) {
+                waitNanos = Math.min(waitNanos, readyIn);
+                continue;
+            }
+            PrioritizedRequest req = queue.poll(lane.getClientId(), lane.isPooled());
+            if (req == null) {
+                continue;
+            }
+            if (handle(req, lane)) {
+                progressed = true;
+            } else {
+                waitNanos = Math.min(waitNanos, ACQUIRE_RETRY_NANOS);
+            }
+        }
+        cursor++;
+        if (!progressed && queue.isEmpty()) {
+            prefetchIdle(all);
+        }
+        return progressed ? 0 : waitNanos;
+    }
+
+    /** Usa o slot ocioso de cada credencial para revalidar uma chave quente perto de expirar. */
+    private void prefetchIdle(List<UpstreamLane> all) {
+        for (UpstreamLane lane : all) {
+            if (lane.nanosUntilReady() > 0) {
+                continue;
+            }
+            PrioritizedRequest req = prefetcher.next(lane.getClientId(), lane.isPooled());
+            if (req == null) {
+                // nada a revalidar por esta credencial; as próximas podem ter chaves fixadas nelas
+                continue;
+            }
+            if (!lane.tryAcquire()) {
+                req.getFuture().completeExceptionally(new RequestDroppedException("prefetch"));
+                continue;
+            }
+            metrics.prefetchDispatched();
+            dispatch(req, lane, true);
+        }
+    }
+
+    /** Retorna {@code false} apenas quando a requisição voltou para a fila por falta de permissão. */
+    private boolean handle(PrioritizedRequest req, UpstreamLane lane) {
+        long polled = System.nanoTime();
         try {
-            PrioritizedRequest req = queue.take();
+            // descartes e hits de cache não consomem token
             if (req.isExpired()) {
-                metrics.counter("proxy.queue.drop", "reason", "ttl").increment();
-                return;
+                leftQueue(req, polled);
+                metrics.drop(ProxyMetrics.DropReason.TTL);
+                req.getFuture().completeExceptionally(new RequestDroppedException("ttl"));
+                return true;
             }
-            Instant start = Instant.now();
-            upstreamClient.fetchScore(req.getQueryParams(), req.getHeaders(), req.getClientId())
-                    .doOnError(err -> metrics.counter("proxy.upstream.errors").increment())
-                    .doOnSuccess(body -> {
-                        metrics.counter("proxy.upstream.success").increment();
-                        String cacheKey = buildCacheKey(req.getQueryParams());
-                        cache.put(cacheKey, body);
-                        req.getFuture().complete(body);
-                    })
-                    .doOnError(err -> req.getFuture().completeExceptionally(err))
-                    .doFinally(s -> {
-                        long ms = Duration.between(start, Instant.now()).toMillis();
-                        latencyTimer.record(ms, TimeUnit.MILLISECONDS);
-                        adjustCadence(ms);
-                    })
-                    .subscribe();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            // entradas stale não contam: a requisição pode ser justamente a revalidação
+            CachedScore cached = cache.getFresh(req.getKey());
+            if (cached != null) {
+                leftQueue(req, polled);
+                metrics.skippedCached();
+                req.setResponseStatus(cached.status());
+                req.getFuture().complete(cached.body());
+                return true;
+            }
+            if (!lane.tryAcquire()) {
+                // circuit breaker half-open sem chamadas de teste livres
+                // de volta à fila: a espera continua contando e só é registrada quando ela sair de vez
+                if (!queue.requeue(req)) {
+                    leftQueue(req, polled);
+                    metrics.drop(ProxyMetrics.DropReason.FULL);
+                    req.getFuture().completeExceptionally(new RequestDroppedException("full"));
+                }
+                return false;
+            }
+            leftQueue(req, polled);
+            dispatch(req, lane, false);
         } catch (Exception e) {
             log.error("Scheduler error", e);
+            req.getFuture().completeExceptionally(e);
         }
+        return true;
     }
 
-    private static String buildCacheKey(Map<String, String> params) {
-        if (params == null || params.isEmpty()) return "";
-        return params.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .map(e -> e.getKey() + "=" + e.getValue())
-                .reduce((a, b) -> a + "&" + b)
-                .orElse("");
+    private void leftQueue(PrioritizedRequest req, long polledNanos) {
+        req.markPolled(polledNanos);
+        metrics.queueWait(req.getPriority(), req.queueWaitNanos());
     }
 
-    private void adjustCadence(long observedMs) {
-        long base = config.getSchedulerBaseIntervalMs();
-        long penalty = config.getPenaltyExtraDelayMs();
-        long target = observedMs > (base + penalty - 50) ? base + penalty : base; // heurística simples
-        long prev = currentIntervalMs.getAndSet(target);
-        if (prev != target) {
-            metrics.gauge("proxy.scheduler.interval.ms", currentIntervalMs);
-            log.info("Ajuste de intervalo do scheduler: {}ms -> {}ms", prev, target);
+    private void dispatch(PrioritizedRequest req, UpstreamLane lane, boolean prefetch) {
+        long start = System.nanoTime();
+        req.markDispatched(start);
+        if (!prefetch) {
+            metrics.dispatchDelay(req.getPriority(), req.dispatchDelayNanos());
+        }
+        try {
+            upstreamClient.fetchScore(req.getQueryParams(), req.getHeaders(), lane.getClientId(),
+                            (sentNanos, newConnection) -> lane.sent(start, sentNanos, newConnection))
+                    .doOnSuccess(resp -> {
+                        // as marcas vêm antes de completar o future: o controller lê ao montar o Server-Timing
+                        onUpstreamResult(req, lane, start, resp.isFailure(), resp.transformNanos(), null);
+                        if (resp.isFailure()) {
+                            cache.putFailure(req.getKey(), resp, req);
+                        } else {
+                            cache.put(req.getKey(), resp, req, prefetch);
+                        }
+                        req.setResponseStatus(resp.isSuccess() ? 200 : resp.statusCode());
+                        req.getFuture().complete(resp.body());
+                        queue.signal();
+                    })
+                    .doOnError(err -> {
+                        onUpstreamResult(req, lane, start, true, 0, err);
+                        req.getFuture().completeExceptionally(err);
+                        queue.signal();
+                    })
+                    .subscribe(resp -> { }, err -> { });
+        } catch (RuntimeException e) {
+            onUpstreamResult(req, lane, start, true, 0, e);
+            queue.signal();
+            throw e;
         }
     }
-}
-
 
+    private void onUpstreamResult(PrioritizedRequest req, UpstreamLane lane, long startNanos, boolean failed,
+                                  long transformNanos, Throwable error) {
+        long now = System.nanoTime();
+        long elapsed = now - startNanos;
+        req.markResponded(now, transformNanos);
+        metrics.upstream(req.getPriority(), failed, elapsed);
+        if (transformNanos > 0) {
+            metrics.transform(transformNanos);
+        }
+        lane.complete(elapsed, failed, error);
+    }
+}
@@ -0,0 +1,67 @@
+package dev.hsborges.proxy.scheduler;
+
+/**
+ * Token bucket baseado em {@link System#nanoTime()}: o saldo é calculado pelo tempo decorrido, então
+ * atrasos do sleep ou do próprio dispatch não acumulam desvio na taxa efetiva.
+ */
+public class TokenBucket {
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final double capacity;
+    private double permitsPerSecond;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be > 0");
+        }
+        this.capacity = Math.max(1, burst);
+        this.permitsPerSecond = permitsPerSecond;
+        this.tokens = 1;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public synchronized void setRate(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be > 0");
+        }
+        refill(System.nanoTime());
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    /** Tempo até haver ao menos um token disponível; 0 se já houver. */
+    public synchronized long nanosUntilAvailable() {
+        refill(System.nanoTime());
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / permitsPerSecond * NANOS_PER_SECOND);
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill(System.nanoTime());
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    /**
+     * Adia em {@code nanos} o reabastecimento, como se o último token tivesse sido retirado esse tempo depois.
+     * Usado quando a chamada só saiu de fato depois do {@link #tryAcquire()}.
+     */
+    public synchronized void defer(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        refill(System.nanoTime());
+        tokens -= nanos * permitsPerSecond / NANOS_PER_SECOND;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerSecond / NANOS_PER_SECOND);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,124 @@
+package dev.hsborges.proxy.scheduler;
+
+import dev.hsborges.proxy.budget.RateBudget;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Faixa de despacho de uma credencial do upstream. A penalidade é aplicada por client id, então cada
+ * credencial tem seu próprio token bucket, controlador de taxa e circuit breaker. Com várias réplicas, o
+ * {@link RateBudget} limita também a fatia desta réplica na taxa global da credencial.
+ */
+public class UpstreamLane {
+    private static final Logger log = LoggerFactory.getLogger(UpstreamLane.class);
+    private static final long OPEN_CIRCUIT_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    // o upstream mede o intervalo na chegada, com alguns ms de jitter; 0,5% fica dentro da tolerância de ±1%
+    private static final double JITTER_MARGIN = 0.995;
+
+    private final String clientId;
+    private final boolean pooled;
+    private final TokenBucket bucket;
+    private final RateController rateController;
+    private final CircuitBreaker circuitBreaker;
+    private final RateBudget budget;
+    private final long guardNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public UpstreamLane(String clientId, boolean pooled, RateController rateController, int burst, CircuitBreaker circuitBreaker) {
+        this(clientId, pooled, rateController, burst, circuitBreaker, RateBudget.LOCAL, 0);
+    }
+
+    /**
+     * {@code guardMs} é a folga somada ao intervalo depois da primeira chamada de uma conexão nova, que chega
+     * ao upstream mais atrasada do que daqui se vê (aceite e preparo da conexão do lado dele). As demais
+     * chamadas seguem a taxa do controlador, com a margem fixa de 0,5% para o jitter de chegada.
+     */
+    public UpstreamLane(String clientId, boolean pooled, RateController rateController, int burst,
+                        CircuitBreaker circuitBreaker, RateBudget budget, long guardMs) {
+        this.clientId = clientId;
+        this.pooled = pooled;
+        this.rateController = rateController;
+        this.guardNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, guardMs));
+        this.bucket = new TokenBucket(rateController.currentRate() * JITTER_MARGIN, burst);
+        this.circuitBreaker = circuitBreaker;
+        this.budget = budget;
+        budget.register(clientId, pooled);
+    }
+
+    public String getClientId() { return clientId; }
+
+    /** Credenciais do pool atendem a partição compartilhada; as ad-hoc só o que foi fixado nelas. */
+    public boolean isPooled() { return pooled; }
+
+    public RateController getRateController() { return rateController; }
+    public CircuitBreaker getCircuitBreaker() { return circuitBreaker; }
+    public int getInFlight() { return inFlight.get(); }
+
+    /**
+     * Tempo até a faixa poder despachar. {@link Long#MAX_VALUE} quando o limite de concorrência foi
+     * atingido: o scheduler é acordado quando uma chamada termina.
+     */
+    public long nanosUntilReady() {
+        if (inFlight.get() >= rateController.concurrencyLimit()) {
+            return Long.MAX_VALUE;
+        }
+        if (circuitBreaker.getState() == CircuitBreaker.State.OPEN) {
+            return OPEN_CIRCUIT_RECHECK_NANOS;
+        }
+        return Math.max(bucket.nanosUntilAvailable(), budget.nanosUntilAvailable(clientId));
+    }
+
+    /** Reserva token, orçamento global, permissão do circuit breaker e slot de concorrência de uma vez. */
+    public boolean tryAcquire() {
+        if (inFlight.get() >= rateController.concurrencyLimit()) {
+            return false;
+        }
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return false;
+        }
+        if (!budget.tryAcquire(clientId)) {
+            circuitBreaker.releasePermission();
+            return false;
+        }
+        if (!bucket.tryAcquire()) {
+            budget.release(clientId);
+            circuitBreaker.releasePermission();
+            return false;
+        }
+        inFlight.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * A chamada reservada em {@code acquiredNanos} só foi escrita na conexão em {@code sentNanos}: o
+     * intervalo até a próxima passa a contar do envio, para a seguinte não chegar ao upstream antes do
+     * intervalo. Se ela abriu a conexão, soma-se a folga de {@code guardMs}, uma única vez.
+     */
+    public void sent(long acquiredNanos, long sentNanos, boolean newConnection) {
+        bucket.defer(sentNanos - acquiredNanos + (newConnection ? guardNanos : 0));
+    }
+
+    /** Libera o slot e alimenta circuit breaker e controlador de taxa com o resultado da chamada. */
+    public void complete(long elapsedNanos, boolean failed, Throwable error) {
+        if (failed) {
+            circuitBreaker.onError(elapsedNanos, TimeUnit.NANOSECONDS,
+                    error != null ? error : new IllegalStateException("upstream failure response"));
+        } else {
+            circuitBreaker.onSuccess(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+        long ms = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        double prevRate = rateController.currentRate();
+        rateController.onResponse(ms, failed);
+        double rate = rateController.currentRate();
+        if (rate != prevRate) {
+            bucket.setRate(rate * JITTER_MARGIN);
+            log.info("Ajuste de taxa do client {}: {} -> {} req/s (latencia {}ms, falha={})",
+                    clientId, String.format("%.2f", prevRate), String.format("%.2f", rate), ms, failed);
+        }
+        inFlight.decrementAndGet();
+    }
+}
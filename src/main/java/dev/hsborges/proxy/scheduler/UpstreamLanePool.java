@@ -0,0 +1,132 @@
+package dev.hsborges.proxy.scheduler;
+
+import dev.hsborges.proxy.budget.RateBudget;
+import dev.hsborges.proxy.config.ProxyConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Pool de credenciais do upstream. As credenciais configuradas em {@code proxy.client-ids} (e
+ * {@code proxy.client-id}) dividem a fila compartilhada. Um {@code x-client-id} desconhecido só ganha
+ * faixa própria, usada apenas pelas requisições que o informaram, enquanto houver vaga em
+ * {@code proxy.adhoc-client-ids-max}: cada faixa mantém circuit breaker, gauges e partição da fila para
+ * sempre, então o número vindo de cabeçalhos precisa ser limitado. Acima do limite o id é recusado.
+ */
+@Component
+public class UpstreamLanePool {
+    private final ProxyConfig config;
+    private final RateControllerFactory rateControllerFactory;
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final RateBudget budget;
+    private final MeterRegistry metrics;
+    private final ConcurrentHashMap<String, UpstreamLane> byClientId = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<UpstreamLane> lanes = new CopyOnWriteArrayList<>();
+    private int adhocLanes;
+
+    public UpstreamLanePool(ProxyConfig config, RateControllerFactory rateControllerFactory,
+                            CircuitBreakerRegistry circuitBreakers, RateBudget budget, MeterRegistry metrics) {
+        this.config = config;
+        this.rateControllerFactory = rateControllerFactory;
+        this.circuitBreakers = circuitBreakers;
+        this.budget = budget;
+        this.metrics = metrics;
+        for (String clientId : configuredClientIds(config)) {
+            byClientId.computeIfAbsent(clientId, id -> create(id, true));
+        }
+    }
+
+    /** Faixa da credencial, criada se houver vaga para ids fora do pool; {@code null} se não houver. */
+    public UpstreamLane lane(String clientId) {
+        UpstreamLane lane = byClientId.get(clientId);
+        if (lane != null) {
+            return lane;
+        }
+        synchronized (this) {
+            lane = byClientId.get(clientId);
+            if (lane == null && adhocLanes < config.getAdhocClientIdsMax()) {
+                lane = create(clientId, false);
+                byClientId.put(clientId, lane);
+                adhocLanes++;
+            }
+            return lane;
+        }
+    }
+
+    /**
+     * Se requisições fixadas em {@code clientId} podem ser aceitas: sem id (pool) sempre; com id, apenas
+     * se a faixa existe ou pôde ser criada agora, antes de qualquer coisa entrar na fila.
+     */
+    public boolean admits(String clientId) {
+        return clientId == null || clientId.isBlank() || lane(clientId) != null;
+    }
+
+    public List<UpstreamLane> lanes() { return lanes; }
+
+    /**
+     * Taxa somada das credenciais que podem atender uma requisição: a própria credencial quando há
+     * {@code x-client-id}, ou todas as do pool. Só consulta: não cria faixa para o id.
+     */
+    public double dispatchRate(String clientId) {
+        if (clientId != null && !clientId.isBlank()) {
+            UpstreamLane lane = byClientId.get(clientId);
+            return lane == null ? 0 : lane.getRateController().currentRate();
+        }
+        double rate = 0;
+        for (UpstreamLane lane : lanes) {
+            if (lane.isPooled()) {
+                rate += lane.getRateController().currentRate();
+            }
+        }
+        return rate;
+    }
+
+    public boolean hasPooledLanes() {
+        return lanes.stream().anyMatch(UpstreamLane::isPooled);
+    }
+
+    private UpstreamLane create(String clientId, boolean pooled) {
+        RateController controller = rateControllerFactory.create();
+        UpstreamLane lane = new UpstreamLane(clientId, pooled, controller, config.getRateLimitBurst(),
+                circuitBreakers.circuitBreaker("upstream-" + clientId), budget, config.getRateLimitGuardMs());
+
+        Gauge.builder("proxy.scheduler.rate", controller, RateController::currentRate)
+                .description("Taxa de dispatch atual (req/s)")
+                .tag("client_id", clientId)
+                .register(metrics);
+        Gauge.builder("proxy.scheduler.interval.ms", controller, c -> 1000d / c.currentRate())
+                .tag("client_id", clientId)
+                .register(metrics);
+        Gauge.builder("proxy.scheduler.concurrency.limit", controller, RateController::concurrencyLimit)
+                .tag("client_id", clientId)
+                .register(metrics);
+        Gauge.builder("proxy.scheduler.backoffs", controller, RateController::backoffCount)
+                .tag("client_id", clientId)
+                .register(metrics);
+        Gauge.builder("proxy.scheduler.inflight", lane, UpstreamLane::getInFlight)
+                .tag("client_id", clientId)
+                .register(metrics);
+        lanes.add(lane);
+        return lane;
+    }
+
+    private static Set<String> configuredClientIds(ProxyConfig config) {
+        Set<String> ids = new LinkedHashSet<>();
+        if (config.getClientId() != null && !config.getClientId().isBlank()) {
+            ids.add(config.getClientId().trim());
+        }
+        for (String id : config.getClientIds()) {
+            if (id != null && !id.isBlank()) {
+                ids.add(id.trim());
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,171 @@
+package dev.hsborges.proxy.service;
+
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreCache;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.metrics.ProxyMetrics;
+import dev.hsborges.proxy.queue.InFlightRegistry;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.queue.RequestDroppedException;
+import dev.hsborges.proxy.queue.RequestQueue;
+import dev.hsborges.proxy.scheduler.QueueWaitEstimator;
+import dev.hsborges.proxy.scheduler.UpstreamLanePool;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Entrada de trabalho na fila: recusa credenciais sem faixa, coalesce com a requisição pendente para a
+ * mesma chave, aplica o controle de admissão por prazo e enfileira. Também dispara as revalidações de
+ * entradas stale do cache.
+ */
+@Service
+public class ScoreService {
+
+    private static final Submission UNKNOWN_CLIENT = new Submission(Submission.Status.UNKNOWN_CLIENT, null, 0, 0);
+
+    private final RequestQueue queue;
+    private final InFlightRegistry inFlight;
+    private final ScoreCache cache;
+    private final QueueWaitEstimator waitEstimator;
+    private final UpstreamLanePool lanes;
+    private final ProxyConfig config;
+    private final ProxyMetrics metrics;
+
+    public ScoreService(RequestQueue queue, InFlightRegistry inFlight, ScoreCache cache,
+                        QueueWaitEstimator waitEstimator, UpstreamLanePool lanes, ProxyConfig config,
+                        ProxyMetrics metrics) {
+        this.queue = queue;
+        this.inFlight = inFlight;
+        this.cache = cache;
+        this.waitEstimator = waitEstimator;
+        this.lanes = lanes;
+        this.config = config;
+        this.metrics = metrics;
+    }
+
+    public Submission submit(ScoreKey cacheKey, Map<String, String> params, Map<String, String> headers,
+                             String clientId, PrioritizedRequest.Priority prio, long deadlineMs) throws InterruptedException {
+        return submit(cacheKey, params, headers, clientId, prio, deadlineMs, config.getQueueOfferTimeoutMs(), true);
+    }
+
+    /**
+     * Quantas entradas novas um lote pode pôr na fila agora: a fração {@code proxy.batch-queue-share} das
+     * vagas livres, para um lote grande não tomar a capacidade dos {@code GET} interativos.
+     */
+    public int batchSlots() {
+        return (int) (queue.remainingCapacity() * config.getBatchQueueShare());
+    }
+
+    /**
+     * Variante que não espera vaga na fila: usada pelo lote, que submete muitas chaves na mesma thread e
+     * reporta {@code QUEUE_FULL} por item em vez de segurar o worker. Com {@code mayEnqueue} falso o item
+     * só se anexa a uma chamada em andamento; entrada nova na fila volta como {@code QUEUE_FULL}.
+     */
+    public Submission trySubmit(ScoreKey cacheKey, Map<String, String> params, Map<String, String> headers,
+                                String clientId, PrioritizedRequest.Priority prio, long deadlineMs,
+                                boolean mayEnqueue) throws InterruptedException {
+        return submit(cacheKey, params, headers, clientId, prio, deadlineMs, 0, mayEnqueue);
+    }
+
+    private Submission submit(ScoreKey cacheKey, Map<String, String> params, Map<String, String> headers,
+                              String clientId, PrioritizedRequest.Priority prio, long deadlineMs,
+                              long offerTimeoutMs, boolean mayEnqueue) throws InterruptedException {
+        if (!lanes.admits(clientId)) {
+            return UNKNOWN_CLIENT;
+        }
+        Instant ttl = Instant.now().plusMillis(deadlineMs);
+        PrioritizedRequest existing = inFlight.get(cacheKey);
+        if (existing != null) {
+            return attach(existing, prio, ttl);
+        }
+        if (!mayEnqueue) {
+            metrics.drop(ProxyMetrics.DropReason.FULL);
+            return new Submission(Submission.Status.QUEUE_FULL, null, waitEstimator.slotIntervalMs(clientId), 0);
+        }
+
+        PrioritizedRequest req = new PrioritizedRequest(cacheKey, "/score", params, headers, clientId, prio, ttl);
+        long predictedWaitMs = waitEstimator.estimateWaitMs(req);
+        if (predictedWaitMs > deadlineMs) {
+            metrics.drop(ProxyMetrics.DropReason.DEADLINE);
+            long retryAfterMs = predictedWaitMs == Long.MAX_VALUE ? Long.MAX_VALUE : predictedWaitMs - deadlineMs;
+            return new Submission(Submission.Status.DEADLINE_EXCEEDED, null, retryAfterMs, predictedWaitMs);
+        }
+
+        PrioritizedRequest leader = inFlight.register(cacheKey, req);
+        if (leader != req) {
+            return attach(leader, prio, ttl);
+        }
+
+        if (!queue.offer(req, offerTimeoutMs)) {
+            metrics.drop(ProxyMetrics.DropReason.FULL);
+            // libera chamadores que já se anexaram a esta entrada
+            req.getFuture().completeExceptionally(new RequestDroppedException("full"));
+            return new Submission(Submission.Status.QUEUE_FULL, null, waitEstimator.slotIntervalMs(clientId), predictedWaitMs);
+        }
+        metrics.enqueued();
+        return new Submission(Submission.Status.ENQUEUED, req, 0, predictedWaitMs);
+    }
+
+    /**
+     * Job assíncrono: sem prazo, fora do controle de admissão por prazo e na capacidade do backlog. Se já
+     * houver chamada em andamento para a chave, o job se anexa a ela: a chamada deixa de expirar por TTL,
+     * mas mantém o prazo dos chamadores interativos na ordenação.
+     */
+    public Submission submitJob(ScoreKey cacheKey, Map<String, String> params, Map<String, String> headers,
+                                String clientId, PrioritizedRequest.Priority prio) {
+        if (!lanes.admits(clientId)) {
+            return UNKNOWN_CLIENT;
+        }
+        PrioritizedRequest existing = inFlight.get(cacheKey);
+        if (existing != null) {
+            return attach(existing, prio, null);
+        }
+        PrioritizedRequest req = new PrioritizedRequest(cacheKey, "/score", params, headers, clientId, prio, null);
+        PrioritizedRequest leader = inFlight.register(cacheKey, req);
+        if (leader != req) {
+            return attach(leader, prio, null);
+        }
+        if (!queue.offerBacklog(req)) {
+            metrics.drop(ProxyMetrics.DropReason.BACKLOG);
+            req.getFuture().completeExceptionally(new RequestDroppedException("full"));
+            return new Submission(Submission.Status.QUEUE_FULL, null, waitEstimator.slotIntervalMs(clientId), 0);
+        }
+        metrics.jobEnqueued();
+        return new Submission(Submission.Status.ENQUEUED, req, 0, 0);
+    }
+
+    private Submission attach(PrioritizedRequest leader, PrioritizedRequest.Priority prio, Instant ttl) {
+        metrics.coalesced(prio);
+        queue.mergeDeadline(leader, ttl);
+        if (queue.promote(leader, prio)) {
+            metrics.promoted();
+        }
+        return new Submission(Submission.Status.COALESCED, leader, 0, 0);
+    }
+
+    /**
+     * Revalida uma entrada stale com prioridade LOW. O prazo é o que resta da janela de tolerância: se a
+     * fila não consegue atender antes disso, a revalidação não é enfileirada. Nunca bloqueia o chamador.
+     */
+    public void refresh(ScoreKey cacheKey, CachedScore stale) {
+        if (inFlight.get(cacheKey) != null) {
+            return;
+        }
+        long remainingMs = cache.remainingLifeMs(cacheKey);
+        if (remainingMs <= 0) {
+            return;
+        }
+        try {
+            Submission submission = submit(cacheKey, stale.queryParams(), Map.of(), stale.clientId(),
+                    PrioritizedRequest.Priority.LOW, remainingMs, 0, true);
+            if (submission.status() == Submission.Status.ENQUEUED) {
+                cache.recordRefresh();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
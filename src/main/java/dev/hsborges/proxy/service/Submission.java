@@ -0,0 +1,16 @@
+package dev.hsborges.proxy.service;
+
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+
+/**
+ * Resultado de {@link ScoreService#submit}: a requisição que vai responder ao chamador (a própria ou a
+ * já pendente para a mesma chave) ou o motivo da recusa, com a sugestão de {@code Retry-After}.
+ */
+public record Submission(Status status, PrioritizedRequest request, long retryAfterMs, long predictedWaitMs) {
+
+    public enum Status { ENQUEUED, COALESCED, DEADLINE_EXCEEDED, QUEUE_FULL, UNKNOWN_CLIENT }
+
+    public boolean isAccepted() {
+        return status == Status.ENQUEUED || status == Status.COALESCED;
+    }
+}
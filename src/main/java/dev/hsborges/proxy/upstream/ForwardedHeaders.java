@@ -0,0 +1,45 @@
+package dev.hsborges.proxy.upstream;
+
+import dev.hsborges.proxy.config.ProxyConfig;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Lista de cabeçalhos do chamador que seguem para o upstream ({@code proxy.upstream-forward-headers}),
+ * montada uma vez no startup. Todo o resto (hop-by-hop, {@code content-length}, os {@code x-priority},
+ * {@code x-client-id} e {@code x-deadline-ms} do próprio proxy) fica no proxy. Sem cabeçalho permitido,
+ * a requisição guarda o mapa vazio compartilhado em vez de uma cópia dos cabeçalhos de entrada.
+ */
+@Component
+public class ForwardedHeaders {
+
+    private final Set<String> allowed;
+
+    public ForwardedHeaders(ProxyConfig config) {
+        this.allowed = config.getUpstreamForwardHeaders().stream()
+                .map(h -> h.trim().toLowerCase(Locale.ROOT))
+                .filter(h -> !h.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    public Map<String, String> select(Map<String, String> inbound) {
+        if (allowed.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> selected = null;
+        for (Map.Entry<String, String> e : inbound.entrySet()) {
+            if (allowed.contains(e.getKey().toLowerCase(Locale.ROOT))) {
+                if (selected == null) {
+                    selected = new HashMap<>(4);
+                }
+                selected.put(e.getKey(), e.getValue());
+            }
+        }
+        return selected == null ? Map.of() : selected;
+    }
+}
@@ -0,0 +1,116 @@
+package dev.hsborges.proxy.upstream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reescreve o corpo do upstream em streaming, token a token, direto do {@link DataBuffer} para um único
+ * {@code byte[]}: ignora ruído antes do primeiro {@code '{'}, copia o objeto raiz e acrescenta o campo
+ * {@code message} quando há {@code cpf} e {@code score}. Não monta árvore nem passa por {@code String}.
+ */
+public class ScoreBodyTransformer {
+    private static final byte OPEN = '{';
+    private static final byte CLOSE = '}';
+
+    private final JsonFactory factory;
+
+    public ScoreBodyTransformer(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    /** Corpo de sucesso com {@code message}; se não for JSON válido, devolve o trecho entre chaves. */
+    public byte[] addMessage(DataBuffer buffer) {
+        int origin = buffer.readPosition();
+        int start = buffer.indexOf(b -> b == OPEN, origin);
+        if (start < 0) {
+            return readAll(buffer);
+        }
+        buffer.readPosition(start);
+        ByteArrayBuilder out = new ByteArrayBuilder(buffer.readableByteCount() + 48);
+        try (JsonParser parser = factory.createParser(buffer.asInputStream());
+             JsonGenerator gen = factory.createGenerator(out)) {
+            parser.nextToken();
+            gen.writeStartObject();
+            String cpf = null;
+            int score = 0;
+            boolean hasScore = false;
+            TokenBuffer originalMessage = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("message".equals(name)) {
+                    // só sabemos se será sobrescrito ao fim do objeto
+                    originalMessage = new TokenBuffer(parser);
+                    originalMessage.copyCurrentStructure(parser);
+                    continue;
+                }
+                if ("cpf".equals(name) && value.isScalarValue()) {
+                    cpf = parser.getText();
+                } else if ("score".equals(name) && value.isScalarValue()) {
+                    score = parser.getValueAsInt();
+                    hasScore = true;
+                }
+                gen.writeFieldName(name);
+                gen.copyCurrentStructure(parser);
+            }
+            if (cpf != null && hasScore) {
+                gen.writeStringField("message", "O score de " + cpf + " é " + score);
+            } else if (originalMessage != null) {
+                gen.writeFieldName("message");
+                originalMessage.serialize(gen);
+            }
+            gen.writeEndObject();
+        } catch (IOException | RuntimeException e) {
+            return extractJson(buffer, origin, start);
+        }
+        return out.toByteArray();
+    }
+
+    /** Envelope de erro do proxy com o corpo do upstream (trecho entre chaves) como string JSON. */
+    public byte[] errorBody(int code, DataBuffer buffer) {
+        byte[] raw = new byte[0];
+        if (buffer != null) {
+            int origin = buffer.readPosition();
+            int start = buffer.indexOf(b -> b == OPEN, origin);
+            raw = start < 0 ? readAll(buffer) : extractJson(buffer, origin, start);
+        }
+        ByteArrayBuilder out = new ByteArrayBuilder(raw.length + 64);
+        try (JsonGenerator gen = factory.createGenerator(out)) {
+            gen.writeStartObject();
+            gen.writeStringField("status", "upstream_error");
+            gen.writeNumberField("code", code);
+            gen.writeStringField("body", new String(raw, StandardCharsets.UTF_8));
+            gen.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] extractJson(DataBuffer buffer, int origin, int start) {
+        int end = buffer.lastIndexOf(b -> b == CLOSE, buffer.writePosition() - 1);
+        if (end <= start) {
+            buffer.readPosition(origin);
+            return readAll(buffer);
+        }
+        buffer.readPosition(start);
+        byte[] bytes = new byte[end - start + 1];
+        buffer.read(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(DataBuffer buffer) {
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        return bytes;
+    }
+}
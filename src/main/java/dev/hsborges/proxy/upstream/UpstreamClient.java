@@ -1,33 +1,84 @@
 package dev.hsborges.proxy.upstream;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
 import dev.hsborges.proxy.config.ProxyConfig;
-import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.timelimiter.annotation.TimeLimiter;
-import org.springframework.http.HttpHeaders;
+import io.netty.util.AttributeKey;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.http.client.HttpClient;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Map;
+import java.util.function.Function;
 
 @Component
 public class UpstreamClient {
+    private static final Logger log = LoggerFactory.getLogger(UpstreamClient.class);
+    private static final byte[] FALLBACK_BODY =
+            "{\"status\":\"fallback\",\"reason\":\"upstream unavailable\"}".getBytes(StandardCharsets.UTF_8);
+    private static final AttributeKey<Boolean> USED = AttributeKey.valueOf("proxy.upstream.used");
+
     private final WebClient webClient;
+    private final HttpClient httpClient;
     private final ProxyConfig config;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final ScoreBodyTransformer transformer = new ScoreBodyTransformer(new JsonFactory());
 
-    public UpstreamClient(ProxyConfig config, WebClient.Builder builder) {
+    public UpstreamClient(ProxyConfig config, WebClient.Builder builder, HttpClient upstreamHttpClient) {
         this.config = config;
-        this.webClient = builder.baseUrl(config.getUpstreamBaseUrl()).build();
+        this.httpClient = upstreamHttpClient;
+        this.webClient = builder.clientConnector(new ReactorClientHttpConnector(upstreamHttpClient))
+                .baseUrl(config.getUpstreamBaseUrl())
+                .build();
+    }
+
+    /**
+     * Carrega event loops, resolver e contexto TLS e abre {@code proxy.upstream-warmup-connections}
+     * conexões com um {@code HEAD} na URL base, sem {@code client-id}: não gasta orçamento de nenhuma
+     * credencial e a primeira requisição despachada já encontra a conexão pronta no pool. Roda em
+     * segundo plano; qualquer status serve, falha só é registrada.
+     */
+    @PostConstruct
+    public void warmUp() {
+        if (!config.isUpstreamWarmup()) {
+            return;
+        }
+        long start = System.nanoTime();
+        httpClient.warmup()
+                .thenMany(Flux.range(0, Math.max(1, config.getUpstreamWarmupConnections())))
+                .flatMap(i -> webClient.head().httpRequest(UpstreamClient::firstOnConnection)
+                        .retrieve().toBodilessEntity().then()
+                        .onErrorResume(WebClientResponseException.class, e -> Mono.empty()))
+                .then()
+                .timeout(Duration.ofSeconds(10))
+                .subscribe(null,
+                        e -> log.warn("Aquecimento do upstream falhou: {}", e.toString()),
+                        () -> log.info("Conexões com o upstream aquecidas em {} ms", (System.nanoTime() - start) / 1_000_000));
     }
 
-    @CircuitBreaker(name = "upstream", fallbackMethod = "fallbackScore")
-    @TimeLimiter(name = "upstream")
-    public Mono<String> fetchScore(Map<String, String> query, Map<String, String> headers, String overrideClientId) {
+    /**
+     * O circuit breaker é o da faixa de cada credencial ({@code UpstreamLane}); aqui só o tempo limite, com
+     * o fallback para timeout e erro de transporte. {@code onSent} é avisado quando a requisição vai de fato
+     * para a conexão (depois de obtê-la do pool ou abri-la) e se é a primeira dessa conexão.
+     */
+    @TimeLimiter(name = "upstream", fallbackMethod = "fallbackScore")
+    public Mono<UpstreamResponse> fetchScore(Map<String, String> query, Map<String, String> headers, String overrideClientId,
+                                             SendListener onSent) {
         String effectiveClientId = (overrideClientId != null && !overrideClientId.isBlank())
                 ? overrideClientId
                 : config.getClientId();
@@ -40,76 +91,67 @@ public class UpstreamClient {
             }
             return b.build();
         }).accept(MediaType.APPLICATION_JSON);
+        // chamado já com a conexão em mãos, logo antes de escrever os cabeçalhos
+        spec.httpRequest(request -> onSent.sent(System.nanoTime(), firstOnConnection(request)));
 
         if (effectiveClientId != null && !effectiveClientId.isBlank()) {
             spec.header("client-id", effectiveClientId);
         }
 
+        // já filtrados pela lista de ForwardedHeaders; Accept-Encoding fica a cargo do HttpClient
         if (headers != null) {
-            headers.forEach((k, v) -> {
-                if (!HttpHeaders.HOST.equalsIgnoreCase(k)) {
-                    spec.header(k, v);
-                }
-            });
+            headers.forEach(spec::header);
         }
 
-        spec.header(HttpHeaders.ACCEPT_ENCODING, "gzip");
-
         return spec.exchangeToMono(response -> {
+            int code = response.statusCode().value();
             if (response.statusCode().is2xxSuccessful()) {
-                return response.bodyToMono(byte[].class)
-                        .map(bytes -> fixMessage(new String(bytes, StandardCharsets.UTF_8)));
+                return transform(response, code, buffer -> buffer == null ? new byte[0] : transformer.addMessage(buffer));
             }
-            int code = response.statusCode().value();
-            return response.bodyToMono(byte[].class)
-                    .defaultIfEmpty(new byte[0])
-                    .map(bytes -> {
-                        String raw = new String(bytes, StandardCharsets.UTF_8);
-                        String body = extractJson(raw);
-                        return "{\"status\":\"upstream_error\",\"code\":" + code + ",\"body\":" + quoteJson(body) + "}";
-                    });
+            return transform(response, code, buffer -> transformer.errorBody(code, buffer));
         });
     }
 
-    @SuppressWarnings("unused")
-    private Mono<String> fallbackScore(Map<String, String> query, Map<String, String> headers,
-                                       String overrideClientId, Throwable t) {
-        return Mono.just("{\"status\":\"fallback\",\"reason\":\"upstream unavailable\"}");
+    /**
+     * Junta os buffers do corpo num único {@link DataBuffer} e transforma direto em bytes, sem passar por
+     * {@code String}; o buffer é sempre liberado. Corpo vazio chega como {@code null}.
+     */
+    private static Mono<UpstreamResponse> transform(ClientResponse response, int code, Function<DataBuffer, byte[]> fn) {
+        return DataBufferUtils.join(response.body(BodyExtractors.toDataBuffers()))
+                .map(buffer -> {
+                    try {
+                        return timed(code, fn, buffer);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> timed(code, fn, null)));
     }
 
-    private String fixMessage(String raw) {
-        try {
-            String json = extractJson(raw);
-            JsonNode node = mapper.readTree(json);
-
-            if (node.has("cpf") && node.has("score")) {
-                String cpf = node.get("cpf").asText();
-                int score = node.get("score").asInt();
-
-                ((com.fasterxml.jackson.databind.node.ObjectNode) node).put("message",
-                        "O score de " + cpf + " é " + score);
-            }
+    private static UpstreamResponse timed(int code, Function<DataBuffer, byte[]> fn, DataBuffer buffer) {
+        long start = System.nanoTime();
+        byte[] body = fn.apply(buffer);
+        return new UpstreamResponse(code, body, false, System.nanoTime() - start);
+    }
 
-            return mapper.writeValueAsString(node);
-        } catch (Exception e) {
-            return extractJson(raw);
-        }
+    @SuppressWarnings("unused")
+    private Mono<UpstreamResponse> fallbackScore(Map<String, String> query, Map<String, String> headers,
+                                                 String overrideClientId, SendListener onSent, Throwable t) {
+        return Mono.just(new UpstreamResponse(503, FALLBACK_BODY.clone(), true));
     }
 
-    private static String extractJson(String raw) {
-        int start = raw.indexOf('{');
-        int end = raw.lastIndexOf('}');
-        if (start >= 0 && end > start) {
-            return raw.substring(start, end + 1);
-        }
-        return raw;
+    /**
+     * Se é a primeira requisição na conexão, marcando-a como usada. Só o Reactor Netty expõe a conexão;
+     * com outro conector toda conexão conta como já usada.
+     */
+    private static boolean firstOnConnection(ClientHttpRequest request) {
+        return request.getNativeRequest() instanceof Connection connection
+                && connection.channel().attr(USED).getAndSet(Boolean.TRUE) == null;
     }
 
-    private static String quoteJson(String raw) {
-        if (raw == null) return "\"\"";
-        String escaped = raw.replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n");
-        return "\"" + escaped + "\"";
+    /** Envio efetivo de uma chamada: {@link System#nanoTime()} e se ela abriu a conexão. */
+    @FunctionalInterface
+    public interface SendListener {
+        void sent(long sentNanos, boolean newConnection);
     }
 }
@@ -0,0 +1,22 @@
+package dev.hsborges.proxy.upstream;
+
+/**
+ * Resposta já normalizada do upstream, com o corpo em bytes UTF-8 prontos para o cliente.
+ * {@code fallback} indica que o corpo foi gerado localmente porque o upstream não estava disponível.
+ * {@code transformNanos} é o tempo gasto reescrevendo o corpo.
+ */
+public record UpstreamResponse(int statusCode, byte[] body, boolean fallback, long transformNanos) {
+
+    public UpstreamResponse(int statusCode, byte[] body, boolean fallback) {
+        this(statusCode, body, fallback, 0);
+    }
+
+    public boolean isSuccess() {
+        return !fallback && statusCode >= 200 && statusCode < 300;
+    }
+
+    /** Respostas que indicam sobrecarga ou falha do upstream e devem reduzir a taxa. */
+    public boolean isFailure() {
+        return fallback || statusCode == 429 || statusCode >= 500;
+    }
+}
@@ -1,13 +1,26 @@
 package dev.hsborges.proxy;
 
+import dev.hsborges.proxy.config.ProxyConfig;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import static org.assertj.core.api.Assertions.assertThat;
+
 @SpringBootTest
 class ProxyServiceApplicationTests {
 
+	@Autowired
+	ProxyConfig config;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void testContextDoesNotWarmUpTheRealUpstream() {
+		assertThat(config.isUpstreamWarmup()).isFalse();
+		assertThat(config.getUpstreamBaseUrl()).contains("score.hsborges.dev");
+	}
+
 }
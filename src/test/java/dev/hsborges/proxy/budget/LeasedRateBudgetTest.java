@@ -0,0 +1,75 @@
+package dev.hsborges.proxy.budget;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeasedRateBudgetTest {
+
+	private static final String CLIENT = "1";
+	private static final long ROUND_MS = 250;
+
+	private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(1));
+	private InMemoryBudgetStore store;
+
+	@BeforeEach
+	void setUp() {
+		store = new InMemoryBudgetStore(clock::get);
+	}
+
+	@Test
+	void replicasTogetherStayWithinGlobalRate() {
+		LeasedRateBudget[] nodes = {node("a", 10), node("b", 10), node("c", 10)};
+		long[] used = run(nodes, 60, 0);
+
+		long total = used[0] + used[1] + used[2];
+		assertThat(total).isBetween(54L, 61L);
+	}
+
+	@Test
+	void deeperQueueLeasesLargerShare() {
+		LeasedRateBudget[] nodes = {node("deep", 30), node("shallow", 10)};
+		long[] used = run(nodes, 120, 0);
+
+		assertThat(used[0]).isGreaterThan(2 * used[1]);
+		assertThat(used[1]).isGreaterThan(0);
+	}
+
+	@Test
+	void crashedReplicaShareIsReclaimed() {
+		LeasedRateBudget[] nodes = {node("survivor", 10), node("crashed", 10)};
+		run(nodes, 30, 0);
+
+		// "crashed" para de renovar; depois do node-ttl a fatia inteira volta ao sobrevivente
+		long[] used = run(nodes, 60, 1);
+
+		assertThat(used[0]).isGreaterThanOrEqualTo(52L);
+		assertThat(used[1]).isZero();
+	}
+
+	private LeasedRateBudget node(String id, int depth) {
+		LeasedRateBudget node = new LeasedRateBudget(store, id, 1.0, 1, ROUND_MS, 1000, 3000,
+				(clientId, pooled) -> depth, clock::get, () -> { });
+		node.register(CLIENT, true);
+		return node;
+	}
+
+	/** Simula {@code seconds} de rodadas; cada nó vivo consome todo o lease que recebeu. */
+	private long[] run(LeasedRateBudget[] nodes, int seconds, int crashed) {
+		long[] used = new long[nodes.length];
+		for (long step = 0; step < seconds * 1000 / ROUND_MS; step++) {
+			clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(ROUND_MS));
+			for (int i = 0; i < nodes.length - crashed; i++) {
+				nodes[i].rebalance();
+				while (nodes[i].tryAcquire(CLIENT)) {
+					used[i]++;
+				}
+			}
+		}
+		return used;
+	}
+}
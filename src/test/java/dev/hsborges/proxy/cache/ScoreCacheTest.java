@@ -0,0 +1,78 @@
+package dev.hsborges.proxy.cache;
+
+import dev.hsborges.proxy.config.Beans;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.persistence.ScoreJournal;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.upstream.UpstreamResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScoreCacheTest {
+
+	private static final Map<String, String> QUERY = Map.of("cpf", "12345678901");
+	private static final ScoreKey KEY = ScoreKey.of(QUERY, null);
+	private static final UpstreamResponse OK = response(200, "{\"score\":742}", false);
+
+	private ScoreCache cache;
+
+	@BeforeEach
+	void setUp() {
+		ProxyConfig config = new ProxyConfig();
+		// entradas positivas já nascem stale: é o caso da revalidação
+		config.setCacheTtlMs(0);
+		cache = new ScoreCache(new Beans().responseCache(config), ScoreJournal.NOOP, config, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void failedRevalidationKeepsStaleEntry() {
+		cache.put(KEY, OK, request(), false);
+
+		cache.putFailure(KEY, response(500, "{\"status\":\"upstream_error\"}", false), request());
+		cache.putFailure(KEY, response(503, "{\"status\":\"fallback\"}", true), request());
+
+		CachedScore entry = cache.get(KEY);
+		assertThat(cache.state(entry)).isEqualTo(ScoreCache.State.STALE);
+		assertThat(entry.status()).isEqualTo(200);
+		assertThat(new String(entry.body(), StandardCharsets.UTF_8)).isEqualTo("{\"score\":742}");
+	}
+
+	@Test
+	void failureWithoutPositiveEntryIsCachedWithItsStatus() {
+		cache.putFailure(KEY, response(429, "{\"status\":\"upstream_error\",\"code\":429}", false), request());
+
+		CachedScore entry = cache.get(KEY);
+		assertThat(cache.state(entry)).isEqualTo(ScoreCache.State.NEGATIVE);
+		assertThat(entry.status()).isEqualTo(429);
+
+		// uma falha nova substitui a negativa anterior
+		cache.putFailure(KEY, response(503, "{\"status\":\"fallback\"}", true), request());
+		assertThat(cache.get(KEY).status()).isEqualTo(503);
+	}
+
+	@Test
+	void successReplacesNegativeEntry() {
+		cache.putFailure(KEY, response(502, "{}", false), request());
+
+		cache.put(KEY, OK, request(), false);
+
+		assertThat(cache.get(KEY).negative()).isFalse();
+		assertThat(cache.get(KEY).status()).isEqualTo(200);
+	}
+
+	private static PrioritizedRequest request() {
+		return new PrioritizedRequest(KEY, "/score", QUERY, Map.of(), null, PrioritizedRequest.Priority.LOW,
+				Instant.now().plusSeconds(10));
+	}
+
+	private static UpstreamResponse response(int status, String body, boolean fallback) {
+		return new UpstreamResponse(status, body.getBytes(StandardCharsets.UTF_8), fallback);
+	}
+}
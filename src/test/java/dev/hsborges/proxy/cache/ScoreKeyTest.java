@@ -0,0 +1,52 @@
+package dev.hsborges.proxy.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScoreKeyTest {
+
+	private static final List<String> VALUES = List.of(
+			"123.456.789-09", "a b+c&d=e", "~!'()*_.-", "ção/ü€", "😀 emoji", "\ud83d", "x\ud83dy", "%41", "");
+
+	@Test
+	void queryMatchesTheUrlEncoderCanonicalForm() {
+		for (String value : VALUES) {
+			Map<String, String> params = Map.of("cpf", value, "nome ç", value);
+
+			assertThat(ScoreKey.of(params, "7").query()).as(value).isEqualTo(urlEncoded(params));
+		}
+	}
+
+	@Test
+	void orderAndClientIdParamDoNotChangeTheKey() {
+		Map<String, String> ordered = new LinkedHashMap<>();
+		ordered.put("b", "2");
+		ordered.put("a", "1");
+		ordered.put("clientId", "9");
+
+		ScoreKey key = ScoreKey.of(ordered, "9");
+
+		assertThat(key).isEqualTo(ScoreKey.of(Map.of("a", "1", "b", "2"), "9"));
+		assertThat(key.query()).isEqualTo("a=1&b=2");
+		assertThat(key).isNotEqualTo(ScoreKey.of(Map.of("a", "1", "b", "2"), null));
+		assertThat(ScoreKey.ofCanonical(key.tenant(), key.query())).isEqualTo(key);
+	}
+
+	// caminho que o ScoreKey substituiu: ordena pelo nome e codifica com URLEncoder
+	private static String urlEncoded(Map<String, String> params) {
+		return new TreeMap<>(params).entrySet().stream()
+				.filter(e -> !"clientId".equals(e.getKey()))
+				.map(e -> URLEncoder.encode(e.getKey(), StandardCharsets.UTF_8) + "="
+						+ URLEncoder.encode(e.getValue(), StandardCharsets.UTF_8))
+				.collect(Collectors.joining("&"));
+	}
+}
@@ -0,0 +1,74 @@
+package dev.hsborges.proxy.config;
+
+import dev.hsborges.proxy.budget.BudgetStore;
+import dev.hsborges.proxy.budget.InMemoryBudgetStore;
+import dev.hsborges.proxy.budget.LeasedRateBudget;
+import dev.hsborges.proxy.budget.RateBudget;
+import dev.hsborges.proxy.queue.RequestQueue;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BeansTest {
+
+	private final Beans beans = new Beans();
+	private final RequestQueue queue = new RequestQueue(10);
+
+	@Test
+	void localBudgetNeedsNoStore() {
+		assertThat(beans.rateBudget(config("local"), queue, stores(null))).isSameAs(RateBudget.LOCAL);
+	}
+
+	@Test
+	void sharedBudgetFailsWithoutStore() {
+		assertThatThrownBy(() -> beans.rateBudget(config("shared"), queue, stores(null)))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessageContaining("BudgetStore");
+	}
+
+	@Test
+	void sharedBudgetRejectsEmbeddedStore() {
+		assertThatThrownBy(() -> beans.rateBudget(config("shared"), queue, stores(new InMemoryBudgetStore(System::nanoTime))))
+				.isInstanceOf(IllegalStateException.class);
+	}
+
+	@Test
+	void sharedBudgetUsesProvidedStore() {
+		// delega ao embarcado, mas é outro tipo: faz o papel do store sobre o key-value
+		InMemoryBudgetStore backing = new InMemoryBudgetStore(System::nanoTime);
+		BudgetStore external = new BudgetStore() {
+			@Override public void heartbeat(String clientId, String nodeId, int demand, long ttlNanos) {
+				backing.heartbeat(clientId, nodeId, demand, ttlNanos);
+			}
+			@Override public Map<String, Integer> demand(String clientId) { return backing.demand(clientId); }
+			@Override public long take(String clientId, long max, double ratePerSecond, int burst) {
+				return backing.take(clientId, max, ratePerSecond, burst);
+			}
+		};
+
+		RateBudget budget = beans.rateBudget(config("shared"), queue, stores(external));
+
+		assertThat(budget).isInstanceOf(LeasedRateBudget.class);
+		budget.close();
+	}
+
+	private static ProxyConfig config(String rateBudget) {
+		ProxyConfig config = new ProxyConfig();
+		config.setRateBudget(rateBudget);
+		config.setRateBudgetNodeId("n1");
+		return config;
+	}
+
+	private static ObjectProvider<BudgetStore> stores(BudgetStore store) {
+		DefaultListableBeanFactory factory = new DefaultListableBeanFactory();
+		if (store != null) {
+			factory.registerSingleton("budgetStore", store);
+		}
+		return factory.getBeanProvider(BudgetStore.class);
+	}
+}
@@ -0,0 +1,66 @@
+package dev.hsborges.proxy.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import dev.hsborges.proxy.upstream.UpstreamClient;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import java.lang.reflect.Field;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ProxyRuntimeHintsTest {
+
+	private final RuntimeHints hints = new RuntimeHints();
+
+	@Test
+	void registersReflectionForConfigCachesAndFallback() {
+		new ProxyRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+		assertThat(RuntimeHintsPredicates.reflection().onType(ProxyConfig.class)
+				.withMemberCategory(MemberCategory.INVOKE_PUBLIC_METHODS)).accepts(hints);
+		assertThat(RuntimeHintsPredicates.reflection().onType(UpstreamClient.class)
+				.withMemberCategory(MemberCategory.INVOKE_DECLARED_METHODS)).accepts(hints);
+	}
+
+	@Test
+	void registersTheCaffeineClassesTheBuildersGenerate() throws ReflectiveOperationException {
+		new ProxyRuntimeHints().registerHints(hints, getClass().getClassLoader());
+		Beans beans = new Beans();
+		ProxyConfig config = new ProxyConfig();
+
+		List<String> generated = List.of(
+				cacheClass(beans.responseCache(config)), nodeClass(beans.responseCache(config)),
+				cacheClass(beans.jobCache(config)), nodeClass(beans.jobCache(config)));
+
+		assertThat(generated).allSatisfy(name -> assertThat(RuntimeHintsPredicates.reflection()
+				.onType(TypeReference.of(name))
+				.withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)).as(name).accepts(hints));
+	}
+
+	// classe gerada que o LocalCacheFactory instanciou por nome, atrás do wrapper manual
+	private static String cacheClass(Cache<?, ?> cache) throws ReflectiveOperationException {
+		return field(cache, "cache").getClass().getName();
+	}
+
+	private static String nodeClass(Cache<?, ?> cache) throws ReflectiveOperationException {
+		return field(field(cache, "cache"), "nodeFactory").getClass().getName();
+	}
+
+	private static Object field(Object target, String name) throws ReflectiveOperationException {
+		for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+			try {
+				Field field = type.getDeclaredField(name);
+				field.setAccessible(true);
+				return field.get(target);
+			} catch (NoSuchFieldException e) {
+				// declarado numa superclasse
+			}
+		}
+		throw new NoSuchFieldException(name);
+	}
+}
@@ -0,0 +1,89 @@
+package dev.hsborges.proxy.controller;
+
+import dev.hsborges.proxy.budget.RateBudget;
+import dev.hsborges.proxy.cache.ScoreCache;
+import dev.hsborges.proxy.config.Beans;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.job.JobStore;
+import dev.hsborges.proxy.metrics.ProxyMetrics;
+import dev.hsborges.proxy.persistence.ScoreJournal;
+import dev.hsborges.proxy.queue.InFlightRegistry;
+import dev.hsborges.proxy.queue.RequestQueue;
+import dev.hsborges.proxy.scheduler.PenaltyStepRateController;
+import dev.hsborges.proxy.scheduler.QueueWaitEstimator;
+import dev.hsborges.proxy.scheduler.UpstreamLanePool;
+import dev.hsborges.proxy.service.ScoreService;
+import dev.hsborges.proxy.upstream.ForwardedHeaders;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Admissão do lote com os componentes reais e sem scheduler: o lote não pode tomar a fila dos GETs. */
+class BatchAdmissionTest {
+
+	private ProxyConfig config;
+	private RequestQueue queue;
+	private ProxyController controller;
+
+	@BeforeEach
+	void setUp() {
+		config = new ProxyConfig();
+		config.setClientId("1");
+		Beans beans = new Beans();
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		queue = new RequestQueue(config.getQueueMaxSize(), config.getJobBacklogMaxSize(), new int[]{8, 4, 1}, 0);
+		UpstreamLanePool lanes = new UpstreamLanePool(config, () -> new PenaltyStepRateController(1.0, 2000),
+				CircuitBreakerRegistry.ofDefaults(), RateBudget.LOCAL, registry);
+		ScoreCache cache = new ScoreCache(beans.responseCache(config), ScoreJournal.NOOP, config, registry);
+		QueueWaitEstimator waitEstimator = new QueueWaitEstimator(queue, lanes);
+		ProxyMetrics metrics = new ProxyMetrics(registry);
+		ScoreService service = new ScoreService(queue, new InFlightRegistry(), cache, waitEstimator, lanes, config, metrics);
+		JobStore jobs = new JobStore(beans.jobCache(config), ScoreJournal.NOOP, registry);
+		controller = new ProxyController(service, cache, lanes, waitEstimator, jobs, new ForwardedHeaders(config),
+				config, metrics);
+	}
+
+	@Test
+	void maxSizeBatchTakesOnlyItsShareOfTheQueue() throws Exception {
+		controller.getScores(batch(config.getBatchMaxSize()), "", Map.of());
+
+		assertThat(queue.size()).isEqualTo((int) (config.getQueueMaxSize() * config.getBatchQueueShare()));
+	}
+
+	@Test
+	void getIsStillAdmittedWhileMaxSizeBatchIsQueued() throws Exception {
+		controller.getScores(batch(config.getBatchMaxSize()), "", Map.of());
+		int queued = queue.size();
+
+		CompletableFuture<ResponseEntity<?>> get = controller.getScore(Map.of("cpf", "interativo"),
+				Map.of("x-priority", "HIGH"));
+
+		// sem 429/503: a requisição entrou na fila e espera o upstream
+		assertThat(get).isNotDone();
+		assertThat(queue.size()).isEqualTo(queued + 1);
+	}
+
+	@Test
+	void itemsAlreadyInFlightStillCoalesceBeyondTheShare() throws Exception {
+		config.setBatchQueueShare(0);
+		CompletableFuture<ResponseEntity<?>> get = controller.getScore(Map.of("cpf", "0"), Map.of());
+
+		controller.getScores(batch(1), "", Map.of());
+
+		assertThat(get).isNotDone();
+		assertThat(queue.size()).isEqualTo(1);
+	}
+
+	private static List<Map<String, String>> batch(int size) {
+		return IntStream.range(0, size).mapToObj(i -> Map.of("cpf", String.valueOf(i))).toList();
+	}
+}
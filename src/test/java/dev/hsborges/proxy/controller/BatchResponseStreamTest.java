@@ -0,0 +1,34 @@
+package dev.hsborges.proxy.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchResponseStreamTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	void errorLineEscapesMessage() throws IOException {
+		byte[] line = BatchResponseStream.errorLine(3, 400, "CLIENT_ID \"x\\y\"\nnao configurado", 0);
+
+		assertThat(line[line.length - 1]).isEqualTo((byte) '\n');
+		JsonNode json = mapper.readTree(line);
+		assertThat(json.get("index").asInt()).isEqualTo(3);
+		assertThat(json.get("status").asInt()).isEqualTo(400);
+		assertThat(json.get("error").asText()).isEqualTo("CLIENT_ID \"x\\y\"\nnao configurado");
+		assertThat(json.has("retryAfterMs")).isFalse();
+	}
+
+	@Test
+	void errorLineCarriesRetryAfterOnlyWhenKnown() throws IOException {
+		assertThat(mapper.readTree(BatchResponseStream.errorLine(0, 429, "fila cheia", 1500)).get("retryAfterMs").asLong())
+				.isEqualTo(1500);
+		assertThat(mapper.readTree(BatchResponseStream.errorLine(0, 503, "prazo", Long.MAX_VALUE)).has("retryAfterMs"))
+				.isFalse();
+	}
+}
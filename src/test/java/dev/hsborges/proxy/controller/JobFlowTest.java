@@ -0,0 +1,215 @@
+package dev.hsborges.proxy.controller;
+
+import dev.hsborges.proxy.budget.RateBudget;
+import dev.hsborges.proxy.cache.ScoreCache;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.config.Beans;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.job.JobStore;
+import dev.hsborges.proxy.metrics.ProxyMetrics;
+import dev.hsborges.proxy.persistence.ScoreJournal;
+import dev.hsborges.proxy.queue.InFlightRegistry;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.queue.RequestQueue;
+import dev.hsborges.proxy.scheduler.PenaltyStepRateController;
+import dev.hsborges.proxy.scheduler.QueueWaitEstimator;
+import dev.hsborges.proxy.scheduler.UpstreamLanePool;
+import dev.hsborges.proxy.service.ScoreService;
+import dev.hsborges.proxy.service.Submission;
+import dev.hsborges.proxy.upstream.ForwardedHeaders;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fluxo 202 + long-poll dos jobs com os componentes reais e sem scheduler: as requisições ficam na fila
+ * e o teste completa o future no lugar do upstream.
+ */
+class JobFlowTest {
+
+	private static final byte[] SCORE = "{\"score\":742}".getBytes(StandardCharsets.UTF_8);
+
+	private ProxyConfig config;
+	private RequestQueue queue;
+	private ScoreService service;
+	private JobStore jobs;
+	private ProxyController controller;
+
+	@BeforeEach
+	void setUp() {
+		config = new ProxyConfig();
+		config.setClientId("1");
+		config.setJobBacklogMaxSize(2);
+		config.setJobPollMaxMs(5_000);
+		Beans beans = new Beans();
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		queue = new RequestQueue(config.getQueueMaxSize(), config.getJobBacklogMaxSize(), new int[]{8, 4, 1}, 0);
+		UpstreamLanePool lanes = new UpstreamLanePool(config, () -> new PenaltyStepRateController(1.0, 2000),
+				CircuitBreakerRegistry.ofDefaults(), RateBudget.LOCAL, registry);
+		ScoreCache cache = new ScoreCache(beans.responseCache(config), ScoreJournal.NOOP, config, registry);
+		QueueWaitEstimator waitEstimator = new QueueWaitEstimator(queue, lanes);
+		ProxyMetrics metrics = new ProxyMetrics(registry);
+		service = new ScoreService(queue, new InFlightRegistry(), cache, waitEstimator, lanes, config, metrics);
+		jobs = new JobStore(beans.jobCache(config), ScoreJournal.NOOP, registry);
+		controller = new ProxyController(service, cache, lanes, waitEstimator, jobs, new ForwardedHeaders(config),
+				config, metrics);
+	}
+
+	@Test
+	void createAnswers202WithTicketAndWaitsInBacklog() {
+		ResponseEntity<?> created = controller.createJob(Map.of("cpf", "1"), Map.of());
+
+		assertThat(created.getStatusCode().value()).isEqualTo(202);
+		String id = idOf(created);
+		assertThat(created.getHeaders().getLocation()).hasToString("/proxy/score/jobs/" + id);
+		assertThat(created.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+		assertThat((String) created.getBody()).contains("\"status\":\"PENDING\"");
+		assertThat(queue.backlogSize()).isEqualTo(1);
+		assertThat(queue.size()).isZero();
+	}
+
+	@Test
+	void pollBeforeResultReturnsTicketAgain() throws Exception {
+		String id = idOf(controller.createJob(Map.of("cpf", "1"), Map.of()));
+
+		ResponseEntity<?> polled = controller.getJob(id, 0).get(1, TimeUnit.SECONDS);
+
+		assertThat(polled.getStatusCode().value()).isEqualTo(202);
+		assertThat((String) polled.getBody()).contains("\"id\":\"" + id + "\"").contains("PENDING");
+	}
+
+	@Test
+	void longPollAnswersAsSoonAsResultArrives() throws Exception {
+		String id = idOf(controller.createJob(Map.of("cpf", "1"), Map.of()));
+		CompletableFuture<ResponseEntity<?>> poll = controller.getJob(id, 5_000);
+		assertThat(poll).isNotDone();
+
+		queue.poll("1", true).getFuture().complete(SCORE);
+
+		ResponseEntity<?> done = poll.get(1, TimeUnit.SECONDS);
+		assertThat(done.getStatusCode().value()).isEqualTo(200);
+		assertThat((byte[]) done.getBody()).isEqualTo(SCORE);
+		assertThat(jobs.get(id).isDone()).isTrue();
+	}
+
+	@Test
+	void upstreamErrorKeepsItsStatus() throws Exception {
+		String id = idOf(controller.createJob(Map.of("cpf", "1"), Map.of()));
+		PrioritizedRequest req = queue.poll("1", true);
+		byte[] error = "{\"status\":\"upstream_error\",\"code\":500}".getBytes(StandardCharsets.UTF_8);
+
+		// como o scheduler faz: status na requisição e conclusão normal do future
+		req.setResponseStatus(500);
+		req.getFuture().complete(error);
+
+		ResponseEntity<?> done = controller.getJob(id, 0).get(1, TimeUnit.SECONDS);
+		assertThat(done.getStatusCode().value()).isEqualTo(500);
+		assertThat((byte[]) done.getBody()).isEqualTo(error);
+		assertThat(jobs.get(id).isDone()).isTrue();
+	}
+
+	@Test
+	void failedJobAnswers502() throws Exception {
+		String id = idOf(controller.createJob(Map.of("cpf", "1"), Map.of()));
+
+		jobs.get(id).result().completeExceptionally(new IllegalStateException("upstream"));
+
+		ResponseEntity<?> failed = controller.getJob(id, 0).get(1, TimeUnit.SECONDS);
+		assertThat(failed.getStatusCode().value()).isEqualTo(502);
+		assertThat((String) failed.getBody()).contains("FAILED");
+	}
+
+	@Test
+	void unknownJobIs404() throws Exception {
+		assertThat(controller.getJob("nao-existe", 0).get(1, TimeUnit.SECONDS).getStatusCode().value()).isEqualTo(404);
+	}
+
+	@Test
+	void fullBacklogAnswers429AndLeavesInteractiveQueueFree() throws Exception {
+		controller.createJob(Map.of("cpf", "1"), Map.of());
+		controller.createJob(Map.of("cpf", "2"), Map.of());
+
+		ResponseEntity<?> rejected = controller.createJob(Map.of("cpf", "3"), Map.of());
+
+		assertThat(rejected.getStatusCode().value()).isEqualTo(429);
+		assertThat(rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isNotNull();
+		assertThat(queue.backlogSize()).isEqualTo(2);
+		// a fila interativa tem capacidade própria
+		Submission interactive = service.submit(ScoreKey.of(Map.of("cpf", "3"), null), Map.of("cpf", "3"), Map.of(),
+				null, PrioritizedRequest.Priority.HIGH, 10_000);
+		assertThat(interactive.status()).isEqualTo(Submission.Status.ENQUEUED);
+	}
+
+	@Test
+	void clientIdBeyondTheAdhocLimitIsRejectedWithTheReason() {
+		config.setAdhocClientIdsMax(1);
+
+		ResponseEntity<?> own = controller.createJob(Map.of("cpf", "1"), Map.of("x-client-id", "proprio"));
+		ResponseEntity<?> rejected = controller.createJob(Map.of("cpf", "1"), Map.of("x-client-id", "excedente"));
+
+		assertThat(own.getStatusCode().value()).isEqualTo(202);
+		assertThat(rejected.getStatusCode().value()).isEqualTo(400);
+		assertThat((String) rejected.getBody()).contains("excedente").contains("proxy.adhoc-client-ids-max");
+	}
+
+	@Test
+	void sameKeySharesTheTicket() {
+		String first = idOf(controller.createJob(Map.of("cpf", "1"), Map.of()));
+		String second = idOf(controller.createJob(Map.of("cpf", "1"), Map.of()));
+
+		assertThat(second).isEqualTo(first);
+		assertThat(queue.backlogSize()).isEqualTo(1);
+	}
+
+	@Test
+	void jobAttachedToInteractiveCallKeepsItsDeadlineForOrdering() throws InterruptedException {
+		Map<String, String> query = Map.of("cpf", "1");
+		PrioritizedRequest leader = service.submit(ScoreKey.of(query, null), query, Map.of(), null,
+				PrioritizedRequest.Priority.HIGH, 10_000).request();
+		Instant deadline = leader.getDeadline();
+
+		ResponseEntity<?> ticket = controller.createJob(query, Map.of());
+
+		assertThat(idOf(ticket)).isEqualTo(leader.getId());
+		// o job tira o TTL da chamada, mas ela continua ordenada pelo prazo do chamador interativo
+		assertThat(leader.getExpiresAt()).isNull();
+		assertThat(leader.getDeadline()).isEqualTo(deadline);
+		assertThat(leader.isExpired()).isFalse();
+	}
+
+	@Test
+	void interactiveCallAttachedToJobGivesItADeadline() throws InterruptedException {
+		Map<String, String> query = Map.of("cpf", "1");
+		PrioritizedRequest job = service.submitJob(ScoreKey.of(query, null), query, Map.of(), null,
+				PrioritizedRequest.Priority.LOW).request();
+		assertThat(job.getDeadline()).isNull();
+
+		Submission attached = service.submit(ScoreKey.of(query, null), query, Map.of(), null,
+				PrioritizedRequest.Priority.HIGH, 10_000);
+
+		assertThat(attached.request()).isSameAs(job);
+		assertThat(job.getDeadline()).isNotNull();
+		assertThat(job.getExpiresAt()).isNull();
+		assertThat(job.getPriority()).isEqualTo(PrioritizedRequest.Priority.HIGH);
+		// com prazo, passa a contar à frente de quem chega depois na mesma classe
+		assertThat(queue.countAhead(new PrioritizedRequest(ScoreKey.of(Map.of("cpf", "2"), null), "/score",
+				Map.of("cpf", "2"), Map.of(), null, PrioritizedRequest.Priority.HIGH, Instant.now()))).isEqualTo(1);
+	}
+
+	private static String idOf(ResponseEntity<?> ticket) {
+		String body = (String) ticket.getBody();
+		int start = body.indexOf("\"id\":\"") + 6;
+		return body.substring(start, body.indexOf('"', start));
+	}
+}
@@ -0,0 +1,41 @@
+package dev.hsborges.proxy.controller;
+
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerTimingTest {
+
+	@Test
+	void leaderReportsEveryStage() {
+		PrioritizedRequest req = request();
+		long polled = req.getEnqueuedNanos() + 2_000_000;
+		req.markPolled(polled);
+		req.markDispatched(polled + 1_000);
+		req.markResponded(polled + 5_001_000, 40_000);
+
+		assertThat(ServerTiming.of(req, 9_000_000)).isEqualTo(
+				"queue;dur=2.000, dispatch;dur=0.001, upstream;dur=5.000, transform;dur=0.040, total;dur=9.000");
+	}
+
+	@Test
+	void requestStillQueuedReportsNoWait() {
+		assertThat(ServerTiming.of(request(), 1_500_000)).isEqualTo("queue;dur=0.000, total;dur=1.500");
+	}
+
+	@Test
+	void coalescedFollowerReportsOnlyTotal() {
+		assertThat(ServerTiming.coalesced(12_345_678)).isEqualTo("inflight;desc=coalesced, total;dur=12.345");
+	}
+
+	private static PrioritizedRequest request() {
+		Map<String, String> query = Map.of("cpf", "1");
+		return new PrioritizedRequest(ScoreKey.of(query, null), "/score", query, Map.of(), null,
+				PrioritizedRequest.Priority.MEDIUM, Instant.now().plusSeconds(10));
+	}
+}
@@ -0,0 +1,138 @@
+package dev.hsborges.proxy.job;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.config.Beans;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.persistence.ScoreJournal;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JobStoreTest {
+
+	private static final byte[] SCORE = "{\"score\":742}".getBytes(StandardCharsets.UTF_8);
+
+	private final List<String> journaled = new ArrayList<>();
+	private final ScoreJournal journal = new ScoreJournal() {
+		@Override public void cacheEntry(ScoreKey key, CachedScore entry) { }
+		@Override public void jobAccepted(ScoreJob job) { journaled.add("accepted " + job.id()); }
+		@Override public void jobDone(ScoreJob job, ScoreJob.Result result) {
+			journaled.add("done " + job.id() + " " + result.status());
+		}
+	};
+
+	private Cache<String, ScoreJob> cache;
+	private JobStore store;
+
+	@BeforeEach
+	void setUp() {
+		ProxyConfig config = new ProxyConfig();
+		config.setJobResultMaxSize(1);
+		cache = new Beans().jobCache(config);
+		store = new JobStore(cache, journal, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void trackReusesTicketOfSameRequest() {
+		PrioritizedRequest req = request("1");
+
+		ScoreJob first = store.track(req);
+		ScoreJob second = store.track(req);
+
+		assertThat(second).isSameAs(first);
+		assertThat(first.id()).isEqualTo(req.getId());
+		assertThat(first.isDone()).isFalse();
+		assertThat(journaled).containsExactly("accepted " + req.getId());
+	}
+
+	@Test
+	void completionReplacesTicketAndIsJournaled() {
+		PrioritizedRequest req = request("1");
+		ScoreJob pending = store.track(req);
+
+		req.getFuture().complete(SCORE);
+
+		ScoreJob done = store.get(pending.id());
+		assertThat(done.isDone()).isTrue();
+		assertThat(done.createdAtMillis()).isEqualTo(pending.createdAtMillis());
+		assertThat(done.result().join().body()).isEqualTo(SCORE);
+		assertThat(journaled).containsExactly("accepted " + req.getId(), "done " + req.getId() + " 200");
+	}
+
+	@Test
+	void upstreamErrorCompletesWithItsStatus() {
+		PrioritizedRequest req = request("1");
+		store.track(req);
+
+		// o scheduler conclui normalmente as respostas de erro, com o status na requisição
+		req.setResponseStatus(503);
+		req.getFuture().complete(SCORE);
+
+		assertThat(store.get(req.getId()).result().join().status()).isEqualTo(503);
+		assertThat(journaled).containsExactly("accepted " + req.getId(), "done " + req.getId() + " 503");
+	}
+
+	@Test
+	void failedJobIsNotJournaledAsDone() {
+		PrioritizedRequest req = request("1");
+		store.track(req);
+
+		req.getFuture().completeExceptionally(new IllegalStateException("upstream"));
+
+		assertThat(store.get(req.getId()).isDone()).isTrue();
+		assertThat(journaled).containsExactly("accepted " + req.getId());
+	}
+
+	@Test
+	void pendingJobsDoNotCompeteForResultSlots() {
+		List<ScoreJob> pending = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			pending.add(store.track(request(Integer.toString(i))));
+		}
+		store.completed(ScoreKey.of(Map.of("cpf", "x"), null), 200, SCORE);
+		store.completed(ScoreKey.of(Map.of("cpf", "y"), null), 200, SCORE);
+		// o Caffeine despeja por peso na manutenção; cleanUp a roda na hora
+		cache.cleanUp();
+
+		// só uma vaga de resultado: um dos concluídos sai, nenhum pendente
+		assertThat(pending).allSatisfy(job -> assertThat(store.get(job.id())).isNotNull());
+		assertThat(store.all()).hasSize(51);
+	}
+
+	@Test
+	void completedTicketIsDoneAndJournaled() {
+		ScoreJob job = store.completed(ScoreKey.of(Map.of("cpf", "1"), null), 200, SCORE);
+
+		assertThat(job.isDone()).isTrue();
+		assertThat(store.get(job.id())).isSameAs(job);
+		assertThat(journaled).containsExactly("done " + job.id() + " 200");
+	}
+
+	@Test
+	void restoreKeepsLiveTicket() {
+		PrioritizedRequest req = request("1");
+		ScoreJob live = store.track(req);
+		ScoreJob old = new ScoreJob(live.id(), live.key(), 1, null, 2, Map.of(), null);
+
+		store.restore(old);
+
+		assertThat(store.get(live.id())).isSameAs(live);
+		assertThat(journaled).hasSize(1);
+	}
+
+	private static PrioritizedRequest request(String cpf) {
+		Map<String, String> query = Map.of("cpf", cpf);
+		return new PrioritizedRequest(ScoreKey.of(query, null), "/score", query, Map.of(), null,
+				PrioritizedRequest.Priority.LOW, null);
+	}
+}
@@ -0,0 +1,116 @@
+package dev.hsborges.proxy.persistence;
+
+import dev.hsborges.proxy.budget.RateBudget;
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreCache;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.config.Beans;
+import dev.hsborges.proxy.config.ProxyConfig;
+import dev.hsborges.proxy.job.JobStore;
+import dev.hsborges.proxy.job.ScoreJob;
+import dev.hsborges.proxy.metrics.ProxyMetrics;
+import dev.hsborges.proxy.queue.InFlightRegistry;
+import dev.hsborges.proxy.queue.PrioritizedRequest;
+import dev.hsborges.proxy.queue.RequestQueue;
+import dev.hsborges.proxy.scheduler.PenaltyStepRateController;
+import dev.hsborges.proxy.scheduler.QueueWaitEstimator;
+import dev.hsborges.proxy.scheduler.UpstreamLanePool;
+import dev.hsborges.proxy.service.ScoreService;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JournalMaintenanceTest {
+
+	private static final int SEGMENT_BYTES = 64 * 1024;
+	private static final byte[] SCORE = "{\"score\":742}".getBytes(StandardCharsets.UTF_8);
+
+	@TempDir
+	Path dir;
+
+	private ProxyConfig config;
+	private RequestQueue queue;
+	private ScoreCache cache;
+	private JobStore jobs;
+	private JournalMaintenance maintenance;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		config = new ProxyConfig();
+		config.setClientId("1");
+		// grava o estado de uma "execução anterior"
+		MappedScoreJournal previous = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		long now = System.currentTimeMillis();
+		previous.cacheEntry(key("fresh"), entry(now));
+		previous.cacheEntry(key("old"), entry(now - config.getCacheTtlMs() - config.getCacheStaleGraceMs() - 1));
+		previous.jobAccepted(job("pending", "10", 0));
+		previous.jobAccepted(job("finished", "11", 0));
+		previous.jobDone(job("finished", "11", now), new ScoreJob.Result(200, SCORE));
+		previous.close();
+
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		Beans beans = new Beans();
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		queue = new RequestQueue(config.getQueueMaxSize(), config.getJobBacklogMaxSize(), new int[]{8, 4, 1}, 0);
+		UpstreamLanePool lanes = new UpstreamLanePool(config, () -> new PenaltyStepRateController(1.0, 2000),
+				CircuitBreakerRegistry.ofDefaults(), RateBudget.LOCAL, registry);
+		cache = new ScoreCache(beans.responseCache(config), journal, config, registry);
+		jobs = new JobStore(beans.jobCache(config), journal, registry);
+		ScoreService service = new ScoreService(queue, new InFlightRegistry(), cache, new QueueWaitEstimator(queue, lanes),
+				lanes, config, new ProxyMetrics(registry));
+		maintenance = new JournalMaintenance(journal, cache, jobs, service, config);
+	}
+
+	@Test
+	void restoreLoadsLiveCacheEntriesOnly() throws IOException {
+		maintenance.restore();
+
+		assertThat(cache.get(key("fresh"))).isNotNull();
+		assertThat(cache.get(key("old"))).isNull();
+	}
+
+	@Test
+	void pendingJobIsResubmittedWithTheSameTicket() throws IOException {
+		maintenance.restore();
+
+		ScoreJob pending = jobs.get("pending");
+		assertThat(pending).isNotNull();
+		assertThat(pending.isDone()).isFalse();
+		assertThat(pending.key()).isEqualTo(key("10"));
+		assertThat(queue.backlogSize()).isEqualTo(1);
+	}
+
+	@Test
+	void finishedJobIsRestoredDoneAndNotResubmitted() throws IOException {
+		maintenance.restore();
+
+		ScoreJob finished = jobs.get("finished");
+		assertThat(finished.isDone()).isTrue();
+		assertThat(finished.result().join().body()).isEqualTo(SCORE);
+		assertThat(queue.backlogSize()).isEqualTo(1);
+	}
+
+	private static ScoreKey key(String cpf) {
+		return ScoreKey.of(Map.of("cpf", cpf), null);
+	}
+
+	private static CachedScore entry(long writtenAt) {
+		return new CachedScore(SCORE, 200, writtenAt, false, Map.of(), null);
+	}
+
+	private static ScoreJob job(String id, String cpf, long completedAt) {
+		CompletableFuture<ScoreJob.Result> result = completedAt > 0
+				? CompletableFuture.completedFuture(new ScoreJob.Result(200, SCORE)) : null;
+		return new ScoreJob(id, key(cpf), 1, result, completedAt, Map.of("cpf", cpf), null);
+	}
+}
@@ -0,0 +1,329 @@
+package dev.hsborges.proxy.persistence;
+
+import dev.hsborges.proxy.cache.CachedScore;
+import dev.hsborges.proxy.cache.ScoreKey;
+import dev.hsborges.proxy.job.ScoreJob;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedScoreJournalTest {
+
+	private static final int SEGMENT_BYTES = 4096;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void roundTripKeepsEveryField() throws IOException {
+		ScoreKey key = ScoreKey.of(Map.of("cpf", "1", "tipo", "pf"), "7");
+		CachedScore entry = new CachedScore(body("{\"code\":429}"), 429, 1234, true, Map.of("cpf", "1", "tipo", "pf"), "7");
+		ScoreJob accepted = new ScoreJob("job-1", key, 100, null, 0, Map.of("cpf", "1"), "7");
+		ScoreJob done = new ScoreJob("job-2", key, 100, CompletableFuture.completedFuture(
+				new ScoreJob.Result(200, body("ok"))), 200, Map.of(), null);
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		journal.cacheEntry(key, entry);
+		journal.jobAccepted(accepted);
+		journal.jobDone(done, new ScoreJob.Result(503, body("{\"status\":\"fallback\"}")));
+		journal.close();
+
+		Recorder replayed = replay();
+
+		assertThat(replayed.records).containsExactly("cache", "accepted job-1", "done job-2");
+		assertThat(replayed.keys.get(0)).isEqualTo(key);
+		CachedScore restored = replayed.entries.get(0);
+		assertThat(restored.status()).isEqualTo(429);
+		assertThat(restored.negative()).isTrue();
+		assertThat(restored.prefetched()).isTrue();
+		assertThat(restored.writtenAtMillis()).isEqualTo(1234);
+		assertThat(restored.queryParams()).isEqualTo(entry.queryParams());
+		assertThat(restored.clientId()).isEqualTo("7");
+		assertThat(restored.body()).isEqualTo(entry.body());
+		ScoreJob job = replayed.jobs.get(0);
+		assertThat(job.key()).isEqualTo(key);
+		assertThat(job.createdAtMillis()).isEqualTo(100);
+		assertThat(job.queryParams()).isEqualTo(Map.of("cpf", "1"));
+		assertThat(job.clientId()).isEqualTo("7");
+		assertThat(replayed.jobs.get(1).completedAtMillis()).isEqualTo(200);
+		assertThat(replayed.results.get(0).body()).isEqualTo(body("{\"status\":\"fallback\"}"));
+		assertThat(replayed.results.get(0).status()).isEqualTo(503);
+	}
+
+	@Test
+	void jobDoneWithoutStatusIsReadAs200() {
+		// registro gravado antes de o status existir: termina no corpo
+		JournalCodec.Encoder out = new JournalCodec.Encoder();
+		out.putByte(JournalCodec.JOB_DONE);
+		out.putString("job-1");
+		out.putString("");
+		out.putString("cpf=1");
+		out.putLong(100);
+		out.putLong(200);
+		out.putBytes(body("{\"score\":1}"));
+		Recorder recorder = new Recorder();
+
+		JournalCodec.decode(ByteBuffer.wrap(out.buf, 0, out.pos), recorder);
+
+		assertThat(recorder.results.get(0).status()).isEqualTo(200);
+		assertThat(recorder.results.get(0).body()).isEqualTo(body("{\"score\":1}"));
+	}
+
+	@Test
+	void recordsSpanSegmentsInOrder() throws IOException {
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, 512);
+		for (int i = 0; i < 40; i++) {
+			put(journal, i);
+		}
+		journal.close();
+
+		assertThat(files("segment-")).hasSizeGreaterThan(3);
+		assertThat(replay(512).writtenAt()).containsExactlyElementsOf(range(40));
+	}
+
+	@Test
+	void corruptedRecordStopsReadingItsFile() throws IOException {
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		for (int i = 0; i < 3; i++) {
+			put(journal, i);
+		}
+		journal.close();
+		Path segment = files("segment-").get(0);
+		int second = recordOffsets(segment).get(1);
+
+		// um bit trocado no payload do segundo registro: o CRC não confere
+		flipByte(segment, second + 10);
+
+		assertThat(replay().writtenAt()).containsExactly(0L);
+	}
+
+	@Test
+	void tornRecordIsIgnoredAndLaterSegmentsStillRead() throws IOException {
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		put(journal, 0);
+		put(journal, 1);
+		journal.close();
+		// crash no meio da escrita: payload já no arquivo, tamanho (gravado por último) ainda 0
+		Path segment = files("segment-").get(0);
+		int end = endOf(segment);
+		try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			ch.write(ByteBuffer.wrap(new byte[]{1, 0, 0, 0, 0, 0, 0, 0, 9}), end + 4);
+		}
+
+		MappedScoreJournal restarted = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		put(restarted, 2);
+		restarted.close();
+
+		assertThat(replay().writtenAt()).containsExactly(0L, 1L, 2L);
+	}
+
+	@Test
+	void truncatedFileStopsAtLastCompleteRecord() throws IOException {
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		for (int i = 0; i < 3; i++) {
+			put(journal, i);
+		}
+		journal.close();
+		Path segment = files("segment-").get(0);
+		int third = recordOffsets(segment).get(2);
+		try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			ch.truncate(third + 12);
+		}
+
+		assertThat(replay().writtenAt()).containsExactly(0L, 1L);
+	}
+
+	@Test
+	void emptyFileIsSkipped() throws IOException {
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		put(journal, 0);
+		journal.close();
+		Files.createFile(dir.resolve("segment-0000000000000000.log"));
+
+		assertThat(replay().writtenAt()).containsExactly(0L);
+	}
+
+	@Test
+	void snapshotIsReplayedBeforeNewerSegments() throws IOException {
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		put(journal, 1);
+		journal.compact(sink -> sink.cacheEntry(key(0), entry(2)));
+		journal.cacheEntry(key(0), entry(3));
+		journal.close();
+
+		// o registro 1 só existia no segmento apagado; o 2 vem do snapshot e o 3 do segmento novo
+		assertThat(replay().writtenAt()).containsExactly(2L, 3L);
+	}
+
+	@Test
+	void compactionWritesMarkerAndDeletesOlderSegments() throws IOException {
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		put(journal, 0);
+		List<Path> before = files("segment-");
+
+		journal.compact(sink -> sink.cacheEntry(key(0), entry(0)));
+		journal.compact(sink -> sink.cacheEntry(key(0), entry(1)));
+		journal.close();
+
+		assertThat(before).allSatisfy(p -> assertThat(p).doesNotExist());
+		// só o último snapshot sobrevive, com o marcador e o segmento ativo depois dele
+		assertThat(names("snapshot-")).containsExactly(
+				"snapshot-0000000000000003-0000000000000000.log", "snapshot-0000000000000003.done");
+		assertThat(names("segment-")).containsExactly("segment-0000000000000003.log");
+		assertThat(replay().writtenAt()).containsExactly(1L);
+	}
+
+	@Test
+	void snapshotWithoutMarkerIsDiscardedOnOpen() throws IOException {
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, SEGMENT_BYTES);
+		put(journal, 0);
+		journal.close();
+		// compactação interrompida: snapshot gravado, marcador não
+		Path orphan = dir.resolve("snapshot-0000000000000009-0000000000000000.log");
+		Files.copy(files("segment-").get(0), orphan);
+
+		Recorder replayed = replay();
+
+		assertThat(orphan).doesNotExist();
+		assertThat(replayed.writtenAt()).containsExactly(0L);
+		assertThat(names("segment-")).containsExactly("segment-0000000000000001.log", "segment-0000000000000002.log");
+	}
+
+	@Test
+	void flushForcesRolledSegmentsWithoutLosingRecords() throws IOException {
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, 512);
+		for (int i = 0; i < 20; i++) {
+			put(journal, i);
+			if (i % 3 == 0) {
+				journal.flush();
+			}
+		}
+		journal.flush();
+		journal.close();
+
+		assertThat(replay(512).writtenAt()).containsExactlyElementsOf(range(20));
+	}
+
+	private static void put(MappedScoreJournal journal, int i) {
+		journal.cacheEntry(key(i), entry(i));
+	}
+
+	private static ScoreKey key(int i) {
+		return ScoreKey.of(Map.of("cpf", Integer.toString(i)), "1");
+	}
+
+	// writtenAtMillis identifica o registro nas asserções
+	private static CachedScore entry(long writtenAt) {
+		return new CachedScore(body("{\"score\":742}"), 200, writtenAt, false, Map.of("cpf", "1"), "1");
+	}
+
+	private static byte[] body(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static List<Long> range(int n) {
+		List<Long> values = new ArrayList<>();
+		for (long i = 0; i < n; i++) {
+			values.add(i);
+		}
+		return values;
+	}
+
+	private Recorder replay() throws IOException {
+		return replay(SEGMENT_BYTES);
+	}
+
+	// como no startup: abre (o que inicia um segmento novo) e lê tudo que havia antes
+	private Recorder replay(int segmentBytes) throws IOException {
+		Recorder recorder = new Recorder();
+		MappedScoreJournal journal = MappedScoreJournal.open(dir, segmentBytes);
+		journal.replay(recorder);
+		journal.close();
+		return recorder;
+	}
+
+	private List<Path> files(String prefix) throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(p -> p.getFileName().toString().startsWith(prefix)).sorted().toList();
+		}
+	}
+
+	private List<String> names(String prefix) throws IOException {
+		return files(prefix).stream().map(p -> p.getFileName().toString()).toList();
+	}
+
+	// [tamanho][payload][crc32c] em sequência até o primeiro tamanho 0
+	private static List<Integer> recordOffsets(Path segment) throws IOException {
+		ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(segment));
+		List<Integer> offsets = new ArrayList<>();
+		while (buf.remaining() >= 8) {
+			int len = buf.getInt(buf.position());
+			if (len <= 0) {
+				break;
+			}
+			offsets.add(buf.position());
+			buf.position(buf.position() + 8 + len);
+		}
+		return offsets;
+	}
+
+	private static int endOf(Path segment) throws IOException {
+		List<Integer> offsets = recordOffsets(segment);
+		int last = offsets.get(offsets.size() - 1);
+		return last + 8 + ByteBuffer.wrap(Files.readAllBytes(segment)).getInt(last);
+	}
+
+	private static void flipByte(Path file, int offset) throws IOException {
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			ByteBuffer one = ByteBuffer.allocate(1);
+			ch.read(one, offset);
+			one.put(0, (byte) (one.get(0) ^ 0x01)).rewind();
+			ch.write(one, offset);
+		}
+	}
+
+	private static final class Recorder implements JournalSink {
+		final List<String> records = new ArrayList<>();
+		final List<ScoreKey> keys = new ArrayList<>();
+		final List<CachedScore> entries = new ArrayList<>();
+		final List<ScoreJob> jobs = new ArrayList<>();
+		final List<ScoreJob.Result> results = new ArrayList<>();
+
+		@Override
+		public void cacheEntry(ScoreKey key, CachedScore entry) {
+			records.add("cache");
+			keys.add(key);
+			entries.add(entry);
+		}
+
+		@Override
+		public void jobAccepted(ScoreJob job) {
+			records.add("accepted " + job.id());
+			jobs.add(job);
+		}
+
+		@Override
+		public void jobDone(ScoreJob job, ScoreJob.Result result) {
+			records.add("done " + job.id());
+			jobs.add(job);
+			results.add(result);
+		}
+
+		List<Long> writtenAt() {
+			return entries.stream().map(CachedScore::writtenAtMillis).toList();
+		}
+	}
+}
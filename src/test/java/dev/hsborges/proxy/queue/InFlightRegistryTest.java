@@ -0,0 +1,54 @@
+package dev.hsborges.proxy.queue;
+
+import dev.hsborges.proxy.cache.ScoreKey;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InFlightRegistryTest {
+
+	private static final Map<String, String> QUERY = Map.of("cpf", "12345678901");
+
+	private final InFlightRegistry registry = new InFlightRegistry();
+
+	@Test
+	void sameTenantAndQueryShareTheLeader() {
+		PrioritizedRequest leader = request(ScoreKey.of(QUERY, "a"));
+		PrioritizedRequest follower = request(ScoreKey.of(Map.of("cpf", "12345678901", "clientId", "a"), "a"));
+
+		assertThat(registry.register(leader.getKey(), leader)).isSameAs(leader);
+		assertThat(registry.register(follower.getKey(), follower)).isSameAs(leader);
+	}
+
+	@Test
+	void differentTenantsNeverCoalesce() {
+		PrioritizedRequest a = request(ScoreKey.of(QUERY, "a"));
+		PrioritizedRequest b = request(ScoreKey.of(QUERY, "b"));
+		PrioritizedRequest pooled = request(ScoreKey.of(QUERY, null));
+
+		assertThat(registry.register(a.getKey(), a)).isSameAs(a);
+		assertThat(registry.register(b.getKey(), b)).isSameAs(b);
+		assertThat(registry.register(pooled.getKey(), pooled)).isSameAs(pooled);
+		assertThat(registry.size()).isEqualTo(3);
+	}
+
+	@Test
+	void entryLeavesWhenLeaderCompletes() {
+		PrioritizedRequest leader = request(ScoreKey.of(QUERY, "a"));
+		registry.register(leader.getKey(), leader);
+
+		leader.getFuture().complete(new byte[0]);
+
+		assertThat(registry.get(leader.getKey())).isNull();
+		PrioritizedRequest next = request(ScoreKey.of(QUERY, "a"));
+		assertThat(registry.register(next.getKey(), next)).isSameAs(next);
+	}
+
+	private static PrioritizedRequest request(ScoreKey key) {
+		return new PrioritizedRequest(key, "/score", QUERY, Map.of(), key.tenant(),
+				PrioritizedRequest.Priority.MEDIUM, Instant.now().plusSeconds(10));
+	}
+}
@@ -0,0 +1,170 @@
+package dev.hsborges.proxy.queue;
+
+import dev.hsborges.proxy.cache.ScoreKey;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static dev.hsborges.proxy.queue.PrioritizedRequest.Priority.HIGH;
+import static dev.hsborges.proxy.queue.PrioritizedRequest.Priority.LOW;
+import static dev.hsborges.proxy.queue.PrioritizedRequest.Priority.MEDIUM;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestQueueTest {
+
+	private static final int[] WEIGHTS = {8, 4, 1};
+	private static final long NO_AGING = 0;
+	// envelhecimento curto: os testes só dependem de esperas mínimas, nunca de máximas
+	private static final long AGING_MS = 5;
+
+	private int sequence;
+
+	@Test
+	void weightsSplitSlotsBetweenBusyClasses() throws InterruptedException {
+		RequestQueue queue = new RequestQueue(500, WEIGHTS, NO_AGING);
+		fill(queue, HIGH, 100);
+		fill(queue, MEDIUM, 100);
+		fill(queue, LOW, 100);
+
+		Map<PrioritizedRequest.Priority, Integer> served = pollCount(queue, 5 * 13);
+
+		assertThat(served).containsEntry(HIGH, 40).containsEntry(MEDIUM, 20).containsEntry(LOW, 5);
+	}
+
+	@Test
+	void emptyClassesDoNotHoldSlots() throws InterruptedException {
+		RequestQueue queue = new RequestQueue(100, WEIGHTS, NO_AGING);
+		fill(queue, LOW, 10);
+
+		assertThat(pollCount(queue, 10)).containsEntry(LOW, 10);
+		assertThat(queue.poll("1", true)).isNull();
+		assertThat(queue.isEmpty()).isTrue();
+	}
+
+	@Test
+	void earliestDeadlineFirstWithinClass() throws InterruptedException {
+		RequestQueue queue = new RequestQueue(10, WEIGHTS, NO_AGING);
+		PrioritizedRequest late = request(HIGH, Instant.now().plusSeconds(20));
+		PrioritizedRequest early = request(HIGH, Instant.now().plusSeconds(5));
+		queue.offer(late, 0);
+		queue.offer(early, 0);
+
+		assertThat(queue.poll("1", true)).isSameAs(early);
+		assertThat(queue.poll("1", true)).isSameAs(late);
+	}
+
+	@Test
+	void agedEntryIsServedBeforeYoungerHigh() throws InterruptedException {
+		RequestQueue queue = new RequestQueue(10, WEIGHTS, AGING_MS);
+		PrioritizedRequest medium = offer(queue, MEDIUM);
+		Thread.sleep(4 * AGING_MS);
+		PrioritizedRequest high = offer(queue, HIGH);
+
+		assertThat(queue.poll("1", true)).isSameAs(medium);
+		assertThat(queue.poll("1", true)).isSameAs(high);
+		assertThat(queue.agedCount()).isEqualTo(1);
+	}
+
+	@Test
+	void olderHighKeepsPrecedenceOverAgedEntry() throws InterruptedException {
+		RequestQueue queue = new RequestQueue(10, WEIGHTS, AGING_MS);
+		PrioritizedRequest high = offer(queue, HIGH);
+		Thread.sleep(1);
+		PrioritizedRequest low = offer(queue, LOW);
+		Thread.sleep(4 * AGING_MS);
+
+		// o LOW já passou de 2 * agingMs, mas o HIGH esperou mais
+		assertThat(queue.poll("1", true)).isSameAs(high);
+		assertThat(queue.poll("1", true)).isSameAs(low);
+		assertThat(queue.agedCount()).isEqualTo(1);
+	}
+
+	@Test
+	void lowAgesOnlyAfterTwoAgingSteps() throws InterruptedException {
+		RequestQueue queue = new RequestQueue(10, WEIGHTS, 60_000);
+		PrioritizedRequest low = offer(queue, LOW);
+		PrioritizedRequest high = offer(queue, HIGH);
+
+		assertThat(queue.poll("1", true)).isSameAs(high);
+		assertThat(queue.poll("1", true)).isSameAs(low);
+		assertThat(queue.agedCount()).isZero();
+	}
+
+	@Test
+	void backlogJobsNeverAge() throws InterruptedException {
+		RequestQueue queue = new RequestQueue(10, 10, WEIGHTS, AGING_MS);
+		PrioritizedRequest job = request(LOW, null);
+		queue.offerBacklog(job);
+		Thread.sleep(4 * AGING_MS);
+		PrioritizedRequest medium = offer(queue, MEDIUM);
+
+		assertThat(queue.poll("1", true)).isSameAs(medium);
+		assertThat(queue.poll("1", true)).isSameAs(job);
+		assertThat(queue.backlogSize()).isZero();
+	}
+
+	@Test
+	void mergedDeadlineOrdersByEarliestAndExpiresByLatest() throws InterruptedException {
+		RequestQueue queue = new RequestQueue(10, WEIGHTS, NO_AGING);
+		Instant soon = Instant.now().plusSeconds(5);
+		Instant later = Instant.now().plusSeconds(60);
+		PrioritizedRequest first = request(HIGH, Instant.now().plusSeconds(20));
+		PrioritizedRequest second = request(HIGH, Instant.now().plusSeconds(30));
+		queue.offer(first, 0);
+		queue.offer(second, 0);
+
+		// chamador apressado anexado à segunda: ela passa à frente, e o TTL fica com o prazo mais longo
+		queue.mergeDeadline(second, soon);
+		queue.mergeDeadline(second, later);
+
+		assertThat(second.getDeadline()).isEqualTo(soon);
+		assertThat(second.getExpiresAt()).isEqualTo(later);
+		assertThat(queue.poll("1", true)).isSameAs(second);
+		assertThat(queue.poll("1", true)).isSameAs(first);
+	}
+
+	@Test
+	void countAheadUsesClassCountersAndSkipsBacklog() throws InterruptedException {
+		RequestQueue queue = new RequestQueue(10, 10, WEIGHTS, NO_AGING);
+		fill(queue, MEDIUM, 3);
+		fill(queue, HIGH, 2);
+		queue.offerBacklog(request(MEDIUM, null));
+		queue.promote(offer(queue, LOW), MEDIUM);
+
+		assertThat(queue.countAhead(request(MEDIUM, Instant.now().plusSeconds(60)))).isEqualTo(4);
+		assertThat(queue.countAhead(request(MEDIUM, null))).isEqualTo(5);
+		assertThat(queue.countAhead(request(LOW, Instant.now()))).isZero();
+
+		queue.poll("1", true);
+		assertThat(queue.countAhead(request(HIGH, Instant.now()))).isEqualTo(1);
+	}
+
+	private void fill(RequestQueue queue, PrioritizedRequest.Priority priority, int count) throws InterruptedException {
+		for (int i = 0; i < count; i++) {
+			offer(queue, priority);
+		}
+	}
+
+	private PrioritizedRequest offer(RequestQueue queue, PrioritizedRequest.Priority priority) throws InterruptedException {
+		PrioritizedRequest req = request(priority, Instant.now().plusSeconds(30));
+		assertThat(queue.offer(req, 0)).isTrue();
+		return req;
+	}
+
+	private static Map<PrioritizedRequest.Priority, Integer> pollCount(RequestQueue queue, int polls) {
+		Map<PrioritizedRequest.Priority, Integer> served = new EnumMap<>(PrioritizedRequest.Priority.class);
+		for (int i = 0; i < polls; i++) {
+			PrioritizedRequest req = queue.poll("1", true);
+			assertThat(req).isNotNull();
+			served.merge(req.getPriority(), 1, Integer::sum);
+		}
+		return served;
+	}
+
+	private PrioritizedRequest request(PrioritizedRequest.Priority priority, Instant expiresAt) {
+		Map<String, String> params = Map.of("cpf", Integer.toString(sequence++));
+		return new PrioritizedRequest(ScoreKey.of(params, null), "/score", params, Map.of(), null, priority, expiresAt);
+	}
+}
@@ -0,0 +1,97 @@
+package dev.hsborges.proxy.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class AimdRateControllerTest {
+
+	private static final long HEALTHY_MS = 100;
+	private static final long PENALTY_MS = 2000;
+
+	@Test
+	void raisesRateByOneStepPerHealthyWindow() {
+		AimdRateController aimd = controller(1.0, 0.5, 2.0, 3);
+
+		healthy(aimd, 2);
+		assertThat(aimd.currentRate()).isEqualTo(1.0);
+
+		healthy(aimd, 1);
+		assertThat(aimd.currentRate()).isCloseTo(1.1, within(1e-9));
+
+		healthy(aimd, 3);
+		assertThat(aimd.currentRate()).isCloseTo(1.2, within(1e-9));
+		assertThat(aimd.backoffCount()).isZero();
+	}
+
+	@Test
+	void penaltyLatencyMultipliesRateAndHalvesConcurrency() {
+		AimdRateController aimd = controller(2.0, 0.5, 2.0, 1);
+		// no teto, cada janela saudável soma uma chamada de concorrência
+		healthy(aimd, 4);
+		assertThat(aimd.concurrencyLimit()).isEqualTo(4);
+
+		aimd.onResponse(HEALTHY_MS + PENALTY_MS, false);
+
+		assertThat(aimd.currentRate()).isCloseTo(1.0, within(1e-9));
+		assertThat(aimd.concurrencyLimit()).isEqualTo(2);
+		assertThat(aimd.backoffCount()).isEqualTo(1);
+	}
+
+	@Test
+	void failureBacksOffWithoutABaseline() {
+		AimdRateController aimd = controller(1.0, 0.5, 2.0, 1);
+
+		aimd.onResponse(HEALTHY_MS, true);
+
+		assertThat(aimd.currentRate()).isCloseTo(0.5, within(1e-9));
+		assertThat(aimd.backoffCount()).isEqualTo(1);
+	}
+
+	@Test
+	void jitterBelowThePenaltyThresholdIsHealthy() {
+		AimdRateController aimd = controller(1.0, 0.5, 2.0, 1);
+		healthy(aimd, 1);
+
+		// 3/4 da penalidade acima da média ainda conta como saudável
+		aimd.onResponse(HEALTHY_MS + PENALTY_MS * 3 / 4, false);
+
+		assertThat(aimd.backoffCount()).isZero();
+		assertThat(aimd.currentRate()).isCloseTo(1.2, within(1e-9));
+	}
+
+	@Test
+	void rateStaysWithinMinAndMax() {
+		AimdRateController aimd = controller(1.0, 0.5, 1.15, 1);
+
+		healthy(aimd, 5);
+		assertThat(aimd.currentRate()).isEqualTo(1.15);
+
+		for (int i = 0; i < 5; i++) {
+			aimd.onResponse(HEALTHY_MS, true);
+		}
+		assertThat(aimd.currentRate()).isEqualTo(0.5);
+		assertThat(aimd.concurrencyLimit()).isEqualTo(1);
+	}
+
+	@Test
+	void initialRateIsClampedAndBoundsAreValidated() {
+		assertThat(controller(5.0, 0.5, 2.0, 1).currentRate()).isEqualTo(2.0);
+		assertThat(controller(0.1, 0.5, 2.0, 1).currentRate()).isEqualTo(0.5);
+		assertThatThrownBy(() -> controller(1.0, 2.0, 1.0, 1)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new AimdRateController(1.0, 0.5, 2.0, 0.1, 1.0, 4, PENALTY_MS, 1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	private static AimdRateController controller(double initial, double min, double max, int healthyWindow) {
+		return new AimdRateController(initial, min, max, 0.1, 0.5, 4, PENALTY_MS, healthyWindow);
+	}
+
+	private static void healthy(AimdRateController aimd, int responses) {
+		for (int i = 0; i < responses; i++) {
+			aimd.onResponse(HEALTHY_MS, false);
+		}
+	}
+}
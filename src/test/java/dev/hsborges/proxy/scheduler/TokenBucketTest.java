@@ -0,0 +1,74 @@
+package dev.hsborges.proxy.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenBucketTest {
+
+	private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	@Test
+	void startsWithOneTokenAndRefillsByElapsedTime() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(10, 1);
+
+		assertThat(bucket.tryAcquire()).isTrue();
+		assertThat(bucket.tryAcquire()).isFalse();
+		// 10/s: o próximo token chega 100 ms depois da retirada
+		assertThat(bucket.nanosUntilAvailable()).isBetween(80 * MILLI, 100 * MILLI);
+
+		TimeUnit.NANOSECONDS.sleep(bucket.nanosUntilAvailable());
+
+		assertThat(bucket.nanosUntilAvailable()).isZero();
+		assertThat(bucket.tryAcquire()).isTrue();
+	}
+
+	@Test
+	void idleTimeAccumulatesOnlyUpToTheBurst() throws InterruptedException {
+		TokenBucket bucket = new TokenBucket(100, 3);
+
+		// 200 ms a 100/s dariam 20 tokens; o burst limita a 3
+		Thread.sleep(200);
+
+		assertThat(bucket.tryAcquire()).isTrue();
+		assertThat(bucket.tryAcquire()).isTrue();
+		assertThat(bucket.tryAcquire()).isTrue();
+		assertThat(bucket.tryAcquire()).isFalse();
+	}
+
+	@Test
+	void deferPushesTheNextTokenBack() {
+		TokenBucket bucket = new TokenBucket(10, 1);
+		assertThat(bucket.tryAcquire()).isTrue();
+
+		bucket.defer(50 * MILLI);
+
+		assertThat(bucket.nanosUntilAvailable()).isBetween(130 * MILLI, 150 * MILLI);
+	}
+
+	@Test
+	void nonPositiveDeferIsIgnored() {
+		TokenBucket bucket = new TokenBucket(10, 1);
+
+		bucket.defer(0);
+		bucket.defer(-50 * MILLI);
+
+		assertThat(bucket.nanosUntilAvailable()).isZero();
+	}
+
+	@Test
+	void setRateKeepsTheBalanceAlreadyAccrued() {
+		TokenBucket bucket = new TokenBucket(10, 1);
+		assertThat(bucket.tryAcquire()).isTrue();
+
+		bucket.setRate(1);
+
+		// quase um token inteiro por acumular, agora a 1/s
+		assertThat(bucket.nanosUntilAvailable()).isBetween(900 * MILLI, 1000 * MILLI);
+		assertThatThrownBy(() -> bucket.setRate(0)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new TokenBucket(-1, 1)).isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,78 @@
+package dev.hsborges.proxy.scheduler;
+
+import dev.hsborges.proxy.budget.RateBudget;
+import dev.hsborges.proxy.config.ProxyConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamLanePoolTest {
+
+	@Test
+	void unknownClientIdIsRejectedWithoutAdhocSlots() {
+		UpstreamLanePool pool = pool(0);
+
+		assertThat(pool.admits("1")).isTrue();
+		assertThat(pool.admits("2")).isTrue();
+		assertThat(pool.admits("")).isTrue();
+		assertThat(pool.admits("intruso")).isFalse();
+		assertThat(pool.lane("intruso")).isNull();
+		assertThat(pool.lanes()).hasSize(2);
+	}
+
+	@Test
+	void defaultAdmitsCallersOwnCredentialsUpToTheLimit() {
+		ProxyConfig defaults = new ProxyConfig();
+		UpstreamLanePool pool = pool(defaults.getAdhocClientIdsMax());
+
+		for (int i = 0; i < defaults.getAdhocClientIdsMax(); i++) {
+			assertThat(pool.admits("proprio-" + i)).isTrue();
+		}
+
+		assertThat(defaults.getAdhocClientIdsMax()).isPositive();
+		assertThat(pool.admits("excedente")).isFalse();
+		assertThat(pool.lanes()).hasSize(2 + defaults.getAdhocClientIdsMax());
+	}
+
+	@Test
+	void adhocLanesAreBounded() {
+		UpstreamLanePool pool = pool(2);
+
+		assertThat(pool.admits("a")).isTrue();
+		assertThat(pool.admits("b")).isTrue();
+		assertThat(pool.admits("c")).isFalse();
+		// uma faixa já criada continua aceita
+		assertThat(pool.admits("a")).isTrue();
+		assertThat(pool.lanes()).extracting(UpstreamLane::getClientId).containsExactly("1", "2", "a", "b");
+		assertThat(pool.lane("a").isPooled()).isFalse();
+	}
+
+	@Test
+	void dispatchRateOfRejectedClientIsZero() {
+		UpstreamLanePool pool = pool(0);
+
+		assertThat(pool.dispatchRate("intruso")).isZero();
+		assertThat(pool.dispatchRate(null)).isEqualTo(2.0);
+	}
+
+	@Test
+	void dispatchRateDoesNotCreateLanes() {
+		UpstreamLanePool pool = pool(4);
+
+		assertThat(pool.dispatchRate("novo")).isZero();
+		assertThat(pool.lanes()).hasSize(2);
+	}
+
+	private static UpstreamLanePool pool(int adhocMax) {
+		ProxyConfig config = new ProxyConfig();
+		config.setClientId("1");
+		config.setClientIds(List.of("2"));
+		config.setAdhocClientIdsMax(adhocMax);
+		return new UpstreamLanePool(config, () -> new PenaltyStepRateController(1.0, 2000),
+				CircuitBreakerRegistry.ofDefaults(), RateBudget.LOCAL, new SimpleMeterRegistry());
+	}
+}
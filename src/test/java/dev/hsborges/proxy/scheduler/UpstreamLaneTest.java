@@ -0,0 +1,62 @@
+package dev.hsborges.proxy.scheduler;
+
+import dev.hsborges.proxy.budget.RateBudget;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class UpstreamLaneTest {
+
+	private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+	// 1 req/s com a margem de jitter da faixa
+	private static final long INTERVAL = Math.round(SECOND / 0.995);
+	private static final long TOLERANCE = TimeUnit.MILLISECONDS.toNanos(5);
+
+	@Test
+	void guardFollowsOnlyTheFirstCallOnANewConnection() {
+		UpstreamLane lane = lane(100);
+
+		long readyAfter = dispatch(lane, 0, true);
+
+		assertThat(readyAfter).isCloseTo(INTERVAL + TimeUnit.MILLISECONDS.toNanos(100), within(TOLERANCE));
+	}
+
+	@Test
+	void reusedConnectionKeepsTheConfiguredInterval() {
+		UpstreamLane lane = lane(100);
+
+		long readyAfter = dispatch(lane, 0, false);
+
+		assertThat(readyAfter).isCloseTo(INTERVAL, within(TOLERANCE));
+		// a margem de jitter fica dentro da tolerância de ±1% da taxa configurada
+		assertThat(INTERVAL).isLessThan(SECOND * 101 / 100);
+	}
+
+	@Test
+	void intervalCountsFromTheActualSend() {
+		UpstreamLane lane = lane(0);
+
+		// a chamada só foi escrita na conexão 500 ms depois de reservar o token
+		long readyAfter = dispatch(lane, TimeUnit.MILLISECONDS.toNanos(500), false);
+
+		assertThat(readyAfter).isCloseTo(INTERVAL + TimeUnit.MILLISECONDS.toNanos(500), within(TOLERANCE));
+	}
+
+	/** Despacha uma chamada e devolve quanto depois da reserva a faixa volta a estar pronta. */
+	private static long dispatch(UpstreamLane lane, long sendDelayNanos, boolean newConnection) {
+		long acquired = System.nanoTime();
+		assertThat(lane.tryAcquire()).isTrue();
+		lane.sent(acquired, acquired + sendDelayNanos, newConnection);
+		lane.complete(TimeUnit.MILLISECONDS.toNanos(100), false, null);
+		return System.nanoTime() + lane.nanosUntilReady() - acquired;
+	}
+
+	private static UpstreamLane lane(long guardMs) {
+		return new UpstreamLane("1", true, new PenaltyStepRateController(1.0, 2000), 1,
+				CircuitBreaker.ofDefaults("upstream-1"), RateBudget.LOCAL, guardMs);
+	}
+}
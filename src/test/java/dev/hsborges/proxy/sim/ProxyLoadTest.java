@@ -0,0 +1,233 @@
+package dev.hsborges.proxy.sim;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Carga em malha aberta contra o proxy apontado para o {@link UpstreamSimulator}: as chegadas seguem um
+ * processo de Poisson com semente fixa e não esperam as respostas, então fila e scheduler sentem a mesma
+ * pressão a cada execução. Verifica vazão, p99 por prioridade, descartes, se a taxa vista pelo upstream
+ * respeitou o contrato e se o {@code /health} continua respondendo rápido com a fila saturada. Fica fora
+ * do {@code mvn test} padrão; rodar com {@code ./mvnw test -Pload}.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"proxy.client-id=sim-0",
+		"proxy.client-ids=sim-1,sim-2,sim-3,sim-4",
+		"proxy.prefetch-enabled=false",
+		"resilience4j.timelimiter.instances.upstream.timeoutDuration=5s"
+})
+class ProxyLoadTest {
+	private static final Logger log = LoggerFactory.getLogger(ProxyLoadTest.class);
+
+	private static final long SEED = 42;
+	private static final int DURATION_S = 30;
+	private static final double ARRIVALS_PER_S = 12;
+	private static final int HOT_KEYS = 20;
+	private static final double UNIQUE_FRACTION = 0.15;
+	private static final String[] PRIORITIES = {"HIGH", "MEDIUM", "MEDIUM", "LOW", "LOW"};
+	private static final int CREDENTIALS = 5;
+	private static final int WARMUP_ROUNDS = 3;
+	// 12 chegadas/s contra 5 credenciais a 1 req/s: depois de alguns segundos a fila está em regime
+	private static final long HEALTH_PROBE_FROM_S = 5;
+	private static final long HEALTH_PROBE_INTERVAL_MS = 500;
+	private static final long HEALTH_MAX_MS = 250;
+
+	private static final UpstreamSimulator upstream = startUpstream();
+
+	@LocalServerPort
+	int port;
+
+	@DynamicPropertySource
+	static void upstreamProperties(DynamicPropertyRegistry registry) {
+		registry.add("proxy.upstream-base-url", upstream::baseUrl);
+	}
+
+	@AfterAll
+	static void stopUpstream() {
+		upstream.close();
+	}
+
+	@Test
+	void openLoopMixedPriorities() {
+		HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+		Random random = new Random(SEED);
+		List<Sample> samples = new ArrayList<>();
+		List<Sample> probes = new ArrayList<>();
+		List<CompletableFuture<Void>> pending = new ArrayList<>();
+		warmUp(client);
+
+		long start = System.nanoTime();
+		long next = start;
+		long end = start + TimeUnit.SECONDS.toNanos(DURATION_S);
+		long nextProbe = start + TimeUnit.SECONDS.toNanos(HEALTH_PROBE_FROM_S);
+		int unique = 0;
+		while (next < end) {
+			next += (long) (-Math.log(1 - random.nextDouble()) / ARRIVALS_PER_S * 1e9);
+			LockSupport.parkNanos(next - System.nanoTime());
+			if (System.nanoTime() >= nextProbe) {
+				nextProbe += TimeUnit.MILLISECONDS.toNanos(HEALTH_PROBE_INTERVAL_MS);
+				pending.add(probeHealth(client, probes));
+			}
+			String cpf = random.nextDouble() < UNIQUE_FRACTION
+					? String.format("9%010d", unique++)
+					: String.format("1%010d", random.nextInt(HOT_KEYS));
+			Sample sample = new Sample(PRIORITIES[random.nextInt(PRIORITIES.length)]);
+			samples.add(sample);
+			HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/proxy/score?cpf=" + cpf))
+					.header("x-priority", sample.priority)
+					.timeout(Duration.ofSeconds(40))
+					.build();
+			sample.sentAt = System.nanoTime();
+			pending.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+					.handle((response, error) -> {
+						sample.latencyNanos = System.nanoTime() - sample.sentAt;
+						sample.status = error == null ? response.statusCode() : -1;
+						sample.body = error == null ? response.body() : "";
+						return null;
+					}));
+		}
+		CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+		double elapsedS = (System.nanoTime() - start) / 1e9;
+
+		long ok = samples.stream().filter(s -> s.status == 200).count();
+		long dropped = samples.stream().filter(s -> s.status == 429 || s.status == 503 || s.status == 504).count();
+		String summary = String.format("%d chegadas, %d ok (%.1f/s), %d descartes, p99 HIGH=%dms MEDIUM=%dms LOW=%dms, "
+						+ "upstream: %d chamadas, %d penalizadas, %d concorrentes, max %d/s por credencial",
+				samples.size(), ok, ok / elapsedS, dropped,
+				p99Millis(samples, "HIGH"), p99Millis(samples, "MEDIUM"), p99Millis(samples, "LOW"),
+				upstream.calls(), upstream.penalized(), upstream.concurrent(), upstream.maxCallsPerSecond());
+		summary += String.format(", /health: %d sondas, max %dms", probes.size(), maxMillis(probes));
+		log.info("Carga: {}", summary);
+
+		// o proxy nunca manda chamadas simultâneas nem estoura a janela de 1 s de uma credencial
+		assertThat(upstream.concurrent()).as(summary).isZero();
+		assertThat(upstream.maxCallsPerSecond()).as(summary).isLessThanOrEqualTo(1);
+		// o teto do AIMD é o próprio contrato: penalidade só por jitter de chegada, e rara
+		assertThat(upstream.penalized()).as(summary).isLessThanOrEqualTo(upstream.calls() / 20 + 1);
+		// sem respostas quebradas: todo 200 traz a mensagem montada pelo transformador, e os 500 do simulador
+		// (ao vivo ou do cache negativo) saem com o status original e o corpo normalizado
+		assertThat(samples).filteredOn(s -> s.status == 200).allMatch(s -> s.body.contains("O score de"));
+		assertThat(samples).filteredOn(s -> s.status == 500).allMatch(s -> s.body.contains("\"upstream_error\""));
+
+		assertThat(samples).noneMatch(s -> s.status == -1 || s.status > 500 && s.status != 503 && s.status != 504);
+		assertThat((double) ok / samples.size()).as(summary).isGreaterThanOrEqualTo(0.8);
+		assertThat((double) dropped(samples, "HIGH") / count(samples, "HIGH")).as(summary).isLessThanOrEqualTo(0.05);
+		assertThat(p99Millis(samples, "HIGH")).as(summary).isLessThanOrEqualTo(5000);
+		assertThat(p99Millis(samples, "MEDIUM")).as(summary).isLessThanOrEqualTo(10_500);
+		// o health não passa pela fila nem pelo scheduler: fila saturada não pode atrasá-lo
+		assertThat(probes).as(summary).hasSizeGreaterThanOrEqualTo(
+				(int) ((DURATION_S - HEALTH_PROBE_FROM_S) * 1000 / HEALTH_PROBE_INTERVAL_MS) - 2);
+		assertThat(probes).as(summary).allMatch(s -> s.status == 200);
+		assertThat(maxMillis(probes)).as(summary).isLessThanOrEqualTo(HEALTH_MAX_MS);
+	}
+
+	private CompletableFuture<Void> probeHealth(HttpClient client, List<Sample> probes) {
+		Sample probe = new Sample("HEALTH");
+		probes.add(probe);
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/health"))
+				.timeout(Duration.ofSeconds(5))
+				.build();
+		probe.sentAt = System.nanoTime();
+		return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+				.handle((response, error) -> {
+					probe.latencyNanos = System.nanoTime() - probe.sentAt;
+					probe.status = error == null ? response.statusCode() : -1;
+					return null;
+				});
+	}
+
+	/**
+	 * Algumas rodadas de uma chamada por credencial antes da medição, com pausa de um intervalo depois de
+	 * cada uma: a primeira chamada de cada conexão chega atrasada ao simulador, e até o JIT assentar (proxy,
+	 * simulador e gerador dividem a mesma JVM) o envio oscila alguns milissegundos. Aquece também o
+	 * {@code /health}.
+	 */
+	private void warmUp(HttpClient client) {
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			List<CompletableFuture<HttpResponse<Void>>> calls = new ArrayList<>();
+			for (int i = 0; i < CREDENTIALS; i++) {
+				HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port
+								+ "/proxy/score?cpf=" + String.format("8%010d", round * CREDENTIALS + i)))
+						.header("x-priority", "HIGH")
+						.timeout(Duration.ofSeconds(10))
+						.build();
+				calls.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()));
+			}
+			// o health também: a primeira chamada monta os indicadores e fica fora da medição
+			calls.add(client.sendAsync(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/health")).build(),
+					HttpResponse.BodyHandlers.discarding()));
+			CompletableFuture.allOf(calls.toArray(CompletableFuture[]::new)).join();
+			LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+		}
+	}
+
+	private static UpstreamSimulator startUpstream() {
+		try {
+			return UpstreamSimulator.builder().latency(120, 0.4).errorRate(0.01).gzip(true).build().start();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static long count(List<Sample> samples, String priority) {
+		return samples.stream().filter(s -> s.priority.equals(priority)).count();
+	}
+
+	private static long dropped(List<Sample> samples, String priority) {
+		return samples.stream()
+				.filter(s -> s.priority.equals(priority) && (s.status == 429 || s.status == 503 || s.status == 504))
+				.count();
+	}
+
+	private static long p99Millis(List<Sample> samples, String priority) {
+		long[] latencies = samples.stream()
+				.filter(s -> s.priority.equals(priority) && s.status == 200)
+				.mapToLong(s -> s.latencyNanos)
+				.sorted()
+				.toArray();
+		if (latencies.length == 0) {
+			return 0;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(latencies[(int) Math.ceil(latencies.length * 0.99) - 1]);
+	}
+
+	private static long maxMillis(List<Sample> samples) {
+		return TimeUnit.NANOSECONDS.toMillis(samples.stream().mapToLong(s -> s.latencyNanos).max().orElse(0));
+	}
+
+	private static final class Sample {
+		final String priority;
+		volatile long sentAt;
+		volatile long latencyNanos;
+		volatile int status;
+		volatile String body;
+
+		Sample(String priority) {
+			this.priority = priority;
+		}
+	}
+}
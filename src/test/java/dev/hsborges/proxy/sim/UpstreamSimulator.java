@@ -0,0 +1,242 @@
+package dev.hsborges.proxy.sim;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Upstream de score em processo, com o mesmo contrato do {@code score.hsborges.dev}: 1 req/s por
+ * {@code client-id} e +2 s de penalidade para chamada concorrente ou antes do intervalo. A latência
+ * segue uma log-normal (mediana e dispersão configuráveis), uma fração das chamadas responde 500 e o
+ * corpo pode sair em gzip quando o cliente aceita. Guarda o instante de cada chamada por credencial para
+ * os testes verificarem a taxa que o proxy realmente impôs.
+ *
+ * <p>Também roda sozinho para testes manuais: {@code UpstreamSimulator 9090} atende em
+ * {@code http://localhost:9090/api/score}.
+ */
+public final class UpstreamSimulator implements AutoCloseable {
+
+	public static final String SCORE_PATH = "/api/score";
+
+	private final long intervalNanos;
+	private final long penaltyMs;
+	private final double medianLatencyMs;
+	private final double latencySigma;
+	private final double errorRate;
+	private final boolean gzip;
+
+	private final Map<String, ClientState> clients = new ConcurrentHashMap<>();
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong penalized = new AtomicLong();
+	private final AtomicLong concurrent = new AtomicLong();
+	private final AtomicLong errors = new AtomicLong();
+	private HttpServer server;
+	private ExecutorService executor;
+
+	private UpstreamSimulator(Builder b) {
+		this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / b.ratePerSecond);
+		this.penaltyMs = b.penaltyMs;
+		this.medianLatencyMs = b.medianLatencyMs;
+		this.latencySigma = b.latencySigma;
+		this.errorRate = b.errorRate;
+		this.gzip = b.gzip;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public UpstreamSimulator start() throws IOException {
+		return start(0);
+	}
+
+	public UpstreamSimulator start(int port) throws IOException {
+		executor = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "upstream-simulator");
+			t.setDaemon(true);
+			return t;
+		});
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 512);
+		server.createContext(SCORE_PATH, this::handle);
+		server.setExecutor(executor);
+		server.start();
+		return this;
+	}
+
+	/** URL base para {@code proxy.upstream-base-url}; o {@code proxy.score-path} continua {@code /score}. */
+	public String baseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+	}
+
+	public long calls() { return calls.get(); }
+	public long penalized() { return penalized.get(); }
+	public long concurrent() { return concurrent.get(); }
+	public long errors() { return errors.get(); }
+
+	/** Instantes ({@link System#nanoTime()}) de chegada das chamadas de cada credencial, em ordem. */
+	public Map<String, List<Long>> arrivalsByClient() {
+		Map<String, List<Long>> copy = new ConcurrentHashMap<>();
+		clients.forEach((id, state) -> {
+			synchronized (state) {
+				copy.put(id, new ArrayList<>(state.arrivals));
+			}
+		});
+		return copy;
+	}
+
+	/** Maior número de chamadas de uma mesma credencial dentro de qualquer janela de 1 s. */
+	public int maxCallsPerSecond() {
+		int max = 0;
+		for (List<Long> arrivals : arrivalsByClient().values()) {
+			for (int i = 0, j = 0; j < arrivals.size(); j++) {
+				while (arrivals.get(j) - arrivals.get(i) >= TimeUnit.SECONDS.toNanos(1)) {
+					i++;
+				}
+				max = Math.max(max, j - i + 1);
+			}
+		}
+		return max;
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			String clientId = exchange.getRequestHeaders().getFirst("client-id");
+			if (clientId == null || clientId.isBlank()) {
+				send(exchange, 401, "{\"error\":\"client-id ausente\"}");
+				return;
+			}
+			calls.incrementAndGet();
+			ClientState state = clients.computeIfAbsent(clientId, id -> new ClientState());
+			long delayMs = sampleLatencyMs();
+			synchronized (state) {
+				long now = System.nanoTime();
+				boolean overlapping = state.inFlight > 0;
+				boolean early = state.lastArrival != 0 && now - state.lastArrival < intervalNanos;
+				if (overlapping) {
+					concurrent.incrementAndGet();
+				}
+				if (overlapping || early) {
+					penalized.incrementAndGet();
+					delayMs += penaltyMs;
+				}
+				state.inFlight++;
+				state.lastArrival = now;
+				state.arrivals.add(now);
+			}
+			try {
+				Thread.sleep(delayMs);
+				if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+					errors.incrementAndGet();
+					send(exchange, 500, "{\"error\":\"internal\"}");
+					return;
+				}
+				String cpf = cpf(exchange.getRequestURI());
+				send(exchange, 200, "{\"cpf\":\"" + cpf + "\",\"score\":" + score(cpf) + "}");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				synchronized (state) {
+					state.inFlight--;
+				}
+			}
+		}
+	}
+
+	private void send(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (gzip && accept != null && accept.contains("gzip")) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(body.length);
+			try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+				gz.write(body);
+			}
+			body = out.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	private long sampleLatencyMs() {
+		double gaussian = ThreadLocalRandom.current().nextGaussian();
+		return Math.max(0, Math.round(medianLatencyMs * Math.exp(latencySigma * gaussian)));
+	}
+
+	private static String cpf(URI uri) {
+		String query = uri.getRawQuery();
+		if (query != null) {
+			for (String pair : query.split("&")) {
+				if (pair.startsWith("cpf=")) {
+					return URLDecoder.decode(pair.substring(4), StandardCharsets.UTF_8);
+				}
+			}
+		}
+		return "";
+	}
+
+	private static int score(String cpf) {
+		return 300 + Math.floorMod(cpf.hashCode(), 601);
+	}
+
+	@Override
+	public void close() {
+		if (server != null) {
+			server.stop(0);
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private static final class ClientState {
+		private int inFlight;
+		private long lastArrival;
+		private final List<Long> arrivals = new ArrayList<>();
+	}
+
+	public static final class Builder {
+		private double ratePerSecond = 1.0;
+		private long penaltyMs = 2000;
+		private double medianLatencyMs = 120;
+		private double latencySigma = 0.4;
+		private double errorRate;
+		private boolean gzip;
+
+		public Builder ratePerSecond(double ratePerSecond) { this.ratePerSecond = ratePerSecond; return this; }
+		public Builder penaltyMs(long penaltyMs) { this.penaltyMs = penaltyMs; return this; }
+		public Builder latency(double medianMs, double sigma) { this.medianLatencyMs = medianMs; this.latencySigma = sigma; return this; }
+		public Builder errorRate(double errorRate) { this.errorRate = errorRate; return this; }
+		public Builder gzip(boolean gzip) { this.gzip = gzip; return this; }
+
+		public UpstreamSimulator build() {
+			return new UpstreamSimulator(this);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 9090;
+		UpstreamSimulator sim = builder().gzip(true).build().start(port);
+		System.out.println("Upstream simulado em " + sim.baseUrl() + "/score");
+		Thread.currentThread().join();
+	}
+}
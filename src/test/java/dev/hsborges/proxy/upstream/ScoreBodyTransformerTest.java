@@ -0,0 +1,91 @@
+package dev.hsborges.proxy.upstream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ScoreBodyTransformerTest {
+
+	private final ScoreBodyTransformer transformer = new ScoreBodyTransformer(new JsonFactory());
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	void addsMessageWhenMissing() throws IOException {
+		JsonNode body = json(transformer.addMessage(buffer("{\"cpf\":\"12345678901\",\"score\":742}")));
+
+		assertThat(body.get("cpf").asText()).isEqualTo("12345678901");
+		assertThat(body.get("score").asInt()).isEqualTo(742);
+		assertThat(body.get("message").asText()).isEqualTo("O score de 12345678901 é 742");
+	}
+
+	@Test
+	void replacesExistingMessageOnlyWhenScoreIsPresent() throws IOException {
+		JsonNode replaced = json(transformer.addMessage(
+				buffer("{\"message\":\"antiga\",\"cpf\":\"1\",\"score\":500,\"extra\":{\"a\":[1,2]}}")));
+		JsonNode kept = json(transformer.addMessage(buffer("{\"message\":{\"texto\":\"sem score\"},\"cpf\":\"1\"}")));
+
+		assertThat(replaced.get("message").asText()).isEqualTo("O score de 1 é 500");
+		assertThat(replaced.get("extra").get("a").size()).isEqualTo(2);
+		assertThat(replaced.findValues("message")).hasSize(1);
+		assertThat(kept.get("message").get("texto").asText()).isEqualTo("sem score");
+	}
+
+	@Test
+	void skipsNoiseBeforeTheObject() throws IOException {
+		JsonNode body = json(transformer.addMessage(buffer(")]}',\n{\"cpf\":\"2\",\"score\":300}")));
+
+		assertThat(body.get("message").asText()).isEqualTo("O score de 2 é 300");
+	}
+
+	@Test
+	void nonObjectBodiesPassThrough() {
+		assertThat(text(transformer.addMessage(buffer("[1,2,3]")))).isEqualTo("[1,2,3]");
+		assertThat(text(transformer.addMessage(buffer("\"ok\"")))).isEqualTo("\"ok\"");
+		// objeto truncado: devolve o trecho bruto a partir da primeira chave
+		assertThat(text(transformer.addMessage(buffer("lixo {\"cpf\":\"3\",")))).isEqualTo("lixo {\"cpf\":\"3\",");
+	}
+
+	@Test
+	void emptyBody() {
+		assertThat(transformer.addMessage(buffer(""))).isEmpty();
+	}
+
+	@Test
+	void errorBodyWrapsUpstreamJsonAsString() throws IOException {
+		JsonNode body = json(transformer.errorBody(500, buffer("<html>{\"error\":\"internal\"}</html>")));
+
+		assertThat(body.get("status").asText()).isEqualTo("upstream_error");
+		assertThat(body.get("code").asInt()).isEqualTo(500);
+		assertThat(body.get("body").asText()).isEqualTo("{\"error\":\"internal\"}");
+	}
+
+	@Test
+	void errorBodyWithoutJsonOrContent() throws IOException {
+		JsonNode text = json(transformer.errorBody(429, buffer("Too \"Many\" Requests")));
+		JsonNode empty = json(transformer.errorBody(503, null));
+
+		assertThat(text.get("body").asText()).isEqualTo("Too \"Many\" Requests");
+		assertThat(empty.get("code").asInt()).isEqualTo(503);
+		assertThat(empty.get("body").asText()).isEmpty();
+	}
+
+	private static DataBuffer buffer(String s) {
+		return DefaultDataBufferFactory.sharedInstance.wrap(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private JsonNode json(byte[] body) throws IOException {
+		return mapper.readTree(body);
+	}
+
+	private static String text(byte[] body) {
+		return new String(body, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,78 @@
+#!/usr/bin/env bash
+# Relatório de startup: tempo até o readiness e latência da primeira requisição, comparando o JVM padrão
+# com o artefato AOT + AppCDS (profile fast-startup) e, se existir, a imagem nativa (profile native).
+# O upstream é o simulador dos testes, então nada sai para a rede e a primeira requisição é comparável.
+#
+#   ./startup-report.sh              # compila com -Pfast-startup e mede
+#   SKIP_BUILD=1 RUNS=5 ./startup-report.sh
+set -euo pipefail
+cd "$(dirname "$0")"
+
+PORT=${PORT:-18080}
+SIM_PORT=${SIM_PORT:-19090}
+RUNS=${RUNS:-3}
+
+if [[ -z "${SKIP_BUILD:-}" ]]; then
+  ./mvnw -q -B -Pfast-startup -DskipTests package
+fi
+
+JAR=$(ls target/proxy-service-*.jar | grep -v original | head -n1)
+NAME=$(basename "$JAR")
+ARGS=(--server.port="$PORT" --proxy.upstream-base-url="http://127.0.0.1:$SIM_PORT/api" --proxy.client-id=report)
+
+java -cp target/test-classes dev.hsborges.proxy.sim.UpstreamSimulator "$SIM_PORT" > /dev/null &
+SIM_PID=$!
+APP_PID=
+trap 'kill $SIM_PID ${APP_PID:-} 2> /dev/null || true' EXIT
+
+now_ms() { echo $(( $(date +%s%N) / 1000000 )); }
+
+median() { sort -n | awk '{ v[NR] = $1 } END { print v[int((NR + 1) / 2)] }'; }
+
+# imprime "readiness_ms primeira_requisicao_ms started_s" de uma execução
+run_once() {
+  local log run=$1; shift
+  log=$(mktemp)
+  local start; start=$(now_ms)
+  "$@" "${ARGS[@]}" > "$log" 2>&1 &
+  APP_PID=$!
+  until curl -sf "http://localhost:$PORT/health/readiness" > /dev/null; do
+    if ! kill -0 "$APP_PID" 2> /dev/null; then
+      echo "aplicação terminou antes do readiness:" >&2
+      tail -n 20 "$log" >&2
+      exit 1
+    fi
+    sleep 0.02
+  done
+  local ready=$(( $(now_ms) - start ))
+  local first
+  first=$(curl -s -o /dev/null -w '%{time_total}' "http://localhost:$PORT/proxy/score?cpf=0000000000$run" \
+    | awk '{ printf "%d", $1 * 1000 }')
+  local started
+  started=$(grep -o 'Started ProxyServiceApplication in [0-9.]*' "$log" | awk '{ print $4 }' || true)
+  kill "$APP_PID" && wait "$APP_PID" 2> /dev/null || true
+  APP_PID=
+  rm -f "$log"
+  echo "$ready $first ${started:--}"
+}
+
+report() {
+  local label=$1; shift
+  local results=() i
+  for (( i = 1; i <= RUNS; i++ )); do
+    results+=("$(run_once "$i" "$@")")
+  done
+  local ready first started
+  ready=$(printf '%s\n' "${results[@]}" | awk '{ print $1 }' | median)
+  first=$(printf '%s\n' "${results[@]}" | awk '{ print $2 }' | median)
+  started=$(printf '%s\n' "${results[@]}" | awk '{ print $3 }' | median)
+  printf '%-10s %14s %20s %18s\n' "$label" "$ready" "$first" "$started"
+}
+
+printf '%-10s %14s %20s %18s\n' "modo" "readiness (ms)" "1a requisicao (ms)" "Spring 'Started' (s)"
+report jvm java -jar "$JAR"
+report aot+cds java -XX:SharedArchiveFile=target/fast-startup/application.jsa -Dspring.aot.enabled=true \
+  -jar "target/fast-startup/$NAME"
+if [[ -x target/proxy-service ]]; then
+  report native target/proxy-service
+fi